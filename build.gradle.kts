@@ -8,6 +8,7 @@ plugins {
     id("io.papermc.hangar-publish-plugin") version "0.1.2"
     id("com.gradleup.shadow") version "9.2.2"
     id("com.modrinth.minotaur") version "2.+"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 repositories {
@@ -29,11 +30,29 @@ repositories {
     }
 }
 
+// Headless load test (src/loadtest), sees everything the plugin compiles against, Paper included
+sourceSets {
+    create("loadtest") {
+        compileClasspath += sourceSets.main.get().output
+        runtimeClasspath += sourceSets.main.get().output
+    }
+}
+configurations["loadtestImplementation"].extendsFrom(configurations.implementation.get(), configurations.compileOnly.get())
+
 dependencies {
     compileOnly("io.papermc.paper:paper-api:" + (property("paperVersion") as String) + "-R0.1-SNAPSHOT")
     compileOnly("me.clip:placeholderapi:2.11.6")
+    compileOnly("io.netty:netty-transport:4.1.118.Final") // provided by the server, for the write futures of shared packets
     implementation("com.github.retrooper:packetevents-spigot:2.9.5")
     implementation("com.lyttledev:lyttleutils:1.2.0")
+
+    // Benchmarks (src/jmh), Bukkit and PacketEvents are stubbed so they run headless
+    jmh("io.papermc.paper:paper-api:" + (property("paperVersion") as String) + "-R0.1-SNAPSHOT")
+    jmh("org.mockito:mockito-core:5.14.2")
+
+    // Load test, PacketEvents needs real Netty buffers to size the packets
+    "loadtestImplementation"("org.mockito:mockito-core:5.14.2")
+    "loadtestImplementation"("io.netty:netty-transport:4.1.118.Final")
 }
 
 group = "com.lyttledev"
@@ -70,6 +89,33 @@ tasks.withType<Javadoc> {
     options.encoding = "UTF-8"
 }
 
+// --- JMH benchmarks (src/jmh/java), run with ./gradlew jmh ---
+jmh {
+    benchmarkMode.add("thrpt")
+    profilers.add("gc") // Allocation rate per operation
+    fork.set(1)
+    warmupIterations.set(3)
+    iterations.set(5)
+    resultFormat.set("TEXT")
+}
+
+// --- Load test (src/loadtest/java), run with ./gradlew loadTest [-PloadTestPlayers=500] ---
+// Fails when a scenario exceeds a budget in src/loadtest/resources/loadtest-budgets.properties,
+// -PloadTestBaseline rewrites that file from the figures of the run instead
+tasks.register<JavaExec>("loadTest") {
+    group = "verification"
+    description = "Drives the nametag handler with simulated players and checks the packet and tick time budgets."
+    classpath = sourceSets["loadtest"].runtimeClasspath
+    mainClass.set("com.lyttledev.lyttlenametag.loadtest.LoadTest")
+    systemProperty("loadtest.players", project.findProperty("loadTestPlayers") ?: "200")
+    // One line per log record, so the report table stays readable
+    systemProperty("java.util.logging.SimpleFormatter.format", "[%4\$s] %5\$s%n")
+    if (project.hasProperty("loadTestBaseline")) {
+        systemProperty("loadtest.baseline", file("src/loadtest/resources/loadtest-budgets.properties").absolutePath)
+    }
+    maxHeapSize = "2g"
+}
+
 // --- Resources folder handling ---
 val folderToDelete = project.file("src/main/resources/#defaults")
 val sourceFolder = project.file("src/main/resources")
@@ -0,0 +1,161 @@
+package com.lyttledev.lyttlenametag.benchmarks;
+
+import com.github.retrooper.packetevents.PacketEvents;
+import com.github.retrooper.packetevents.PacketEventsAPI;
+import com.github.retrooper.packetevents.manager.player.PlayerManager;
+import com.github.retrooper.packetevents.manager.server.ServerVersion;
+import com.lyttledev.lyttlenametag.LyttleNametag;
+import com.lyttledev.lyttlenametag.types.Configs;
+import com.lyttledev.lyttleutils.types.Message.Replacements;
+import com.lyttledev.lyttleutils.types.YamlConfig;
+import com.lyttledev.lyttleutils.utils.communication.Message;
+import io.papermc.paper.threadedregions.scheduler.EntityScheduler;
+import io.papermc.paper.threadedregions.scheduler.GlobalRegionScheduler;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.PluginManager;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.logging.Logger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+// Stubbed Paper server and PacketEvents API for the benchmarks that drive the plugin's own classes.
+// Timers are never run, player tasks run right away, packets are built but not written.
+// Mocks touched per operation are stub-only, so Mockito does not record (and keep) every invocation.
+// Installed once per JVM by every benchmark, including those in the plugin's own packages.
+public final class BenchmarkServer {
+    private static final List<Player> ONLINE = new CopyOnWriteArrayList<>();
+    private static final Map<UUID, Player> ONLINE_BY_ID = new ConcurrentHashMap<>();
+    private static Server server;
+
+    private BenchmarkServer() {
+    }
+
+    // Bukkit only accepts one server per JVM, JMH forks a JVM per benchmark
+    @SuppressWarnings("unchecked")
+    public static synchronized void install() {
+        if (server != null) return;
+        server = mock(Server.class, withSettings().stubOnly());
+        ScheduledTask task = mock(ScheduledTask.class, withSettings().stubOnly());
+        GlobalRegionScheduler global = mock(GlobalRegionScheduler.class, withSettings().stubOnly());
+        when(global.runAtFixedRate(any(), any(), anyLong(), anyLong())).thenReturn(task);
+        when(global.runDelayed(any(), any(), anyLong())).thenReturn(task);
+        PluginManager pluginManager = mock(PluginManager.class, withSettings().stubOnly());
+
+        when(server.getLogger()).thenReturn(Logger.getLogger("Server"));
+        when(server.getName()).thenReturn("Benchmark");
+        when(server.getVersion()).thenReturn("benchmark");
+        when(server.getBukkitVersion()).thenReturn("benchmark");
+        doReturn(ONLINE).when(server).getOnlinePlayers();
+        when(server.getPlayer(any(UUID.class))).thenAnswer(invocation -> ONLINE_BY_ID.get((UUID) invocation.getArgument(0)));
+        when(server.getPluginManager()).thenReturn(pluginManager);
+        when(server.getGlobalRegionScheduler()).thenReturn(global);
+        when(server.isOwnedByCurrentRegion(any(Entity.class))).thenReturn(true);
+        Bukkit.setServer(server);
+
+        PacketEventsAPI<Object> api = mock(PacketEventsAPI.class, withSettings().stubOnly().defaultAnswer(RETURNS_DEEP_STUBS));
+        when(api.getServerManager().getVersion()).thenReturn(ServerVersion.V_1_21);
+        // No users: bundles are dropped before writing, single packets go to a stub
+        when(api.getPlayerManager()).thenReturn(mock(PlayerManager.class, withSettings().stubOnly()));
+        PacketEvents.setAPI(api);
+    }
+
+    // Plugin backed by the bundled config.yml, with the given keys overridden
+    public static LyttleNametag plugin(Map<String, Object> overrides) {
+        YamlConfiguration config = loadDefaultConfig();
+        overrides.forEach(config::set);
+
+        LyttleNametag plugin = mock(LyttleNametag.class, withSettings().stubOnly());
+        when(plugin.isEnabled()).thenReturn(true);
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("LyttleNametag"));
+        when(plugin.getServer()).thenReturn(server);
+        when(plugin.getName()).thenReturn("LyttleNametag");
+
+        YamlConfig general = mock(YamlConfig.class, withSettings().stubOnly());
+        when(general.get(anyString())).thenAnswer(invocation -> config.get(invocation.getArgument(0)));
+        plugin.config = mock(Configs.class, withSettings().stubOnly());
+        plugin.config.general = general;
+
+        MiniMessage miniMessage = MiniMessage.miniMessage();
+        Message message = mock(Message.class, withSettings().stubOnly());
+        when(message.getMessageRaw(anyString(), any(Replacements.class), any()))
+                .thenAnswer(invocation -> miniMessage.deserialize((String) invocation.getArgument(0)));
+        plugin.message = message;
+        return plugin;
+    }
+
+    // An online player, entity IDs as given, the location is read through the supplier on every call
+    @SuppressWarnings("unchecked")
+    public static Player player(String name, int entityId, Supplier<Location> location) {
+        Player player = mock(Player.class, withSettings().stubOnly());
+        UUID id = UUID.nameUUIDFromBytes(("Benchmark:" + name).getBytes(StandardCharsets.UTF_8));
+        when(player.getUniqueId()).thenReturn(id);
+        when(player.getEntityId()).thenReturn(entityId);
+        when(player.getName()).thenReturn(name);
+        when(player.displayName()).thenReturn(Component.text(name));
+        when(player.getLocation()).thenAnswer(invocation -> location.get().clone());
+        when(player.getWorld()).thenAnswer(invocation -> location.get().getWorld());
+        when(player.isOnline()).thenReturn(true);
+        when(player.canSee(any(Player.class))).thenReturn(true);
+
+        EntityScheduler scheduler = mock(EntityScheduler.class, withSettings().stubOnly());
+        ScheduledTask task = mock(ScheduledTask.class, withSettings().stubOnly());
+        when(scheduler.run(any(), any(), any())).thenAnswer(invocation -> {
+            ((Consumer<ScheduledTask>) invocation.getArgument(1)).accept(task);
+            return task;
+        });
+        when(scheduler.runDelayed(any(), any(), any(), anyLong())).thenAnswer(invocation -> {
+            ((Consumer<ScheduledTask>) invocation.getArgument(1)).accept(task);
+            return task;
+        });
+        when(player.getScheduler()).thenReturn(scheduler);
+
+        ONLINE.add(player);
+        ONLINE_BY_ID.put(id, player);
+        return player;
+    }
+
+    public static World world(String name) {
+        World world = mock(World.class, withSettings().stubOnly());
+        when(world.getUID()).thenReturn(UUID.nameUUIDFromBytes(name.getBytes(StandardCharsets.UTF_8)));
+        when(world.getName()).thenReturn(name);
+        return world;
+    }
+
+    private static YamlConfiguration loadDefaultConfig() {
+        InputStream in = BenchmarkServer.class.getResourceAsStream("/config.yml");
+        if (in == null) throw new IllegalStateException("config.yml is not on the classpath");
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return YamlConfiguration.loadConfiguration(reader);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.lyttledev.lyttlenametag.benchmarks;
+
+import com.github.retrooper.packetevents.protocol.world.Location;
+import com.lyttledev.lyttlenametag.handlers.NametagPackets;
+import com.lyttledev.lyttlenametag.types.NametagMetrics;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.format.NamedTextColor;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.logging.Logger;
+
+// Packet construction of showNametagToPlayer (spawn bundle) and sendNametagTextUpdate (metadata), PacketEvents stubbed.
+@State(Scope.Thread)
+public class PacketBenchmark {
+    private static final int LINES = 5;
+
+    private NametagPackets packets;
+    private int[] entityIds;
+    private List<Component> lines;
+    private Location location;
+
+    @Setup
+    public void setup() {
+        BenchmarkServer.install();
+        packets = new NametagPackets(Logger.getLogger("benchmark"), new NametagMetrics(), false);
+        entityIds = new int[LINES];
+        lines = new ArrayList<>(LINES);
+        for (int i = 0; i < LINES; i++) {
+            entityIds[i] = Integer.MAX_VALUE / 2 - i;
+            lines.add(Component.text("Line " + i, NamedTextColor.GRAY));
+        }
+        location = new Location(0.5, 64.0, 0.5, 0f, 0f);
+    }
+
+    @Benchmark
+    public void spawnBundle(Blackhole blackhole) {
+        blackhole.consume(packets.spawnPackets(1, entityIds, lines, location, 64f / 80f, 0.275D));
+    }
+
+    @Benchmark
+    public void textUpdate(Blackhole blackhole) {
+        for (int i = 0; i < LINES; i++) {
+            blackhole.consume(packets.textMetadata(entityIds[i], lines.get(i)));
+        }
+    }
+}
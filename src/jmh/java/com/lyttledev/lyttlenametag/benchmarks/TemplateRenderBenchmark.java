@@ -0,0 +1,76 @@
+package com.lyttledev.lyttlenametag.benchmarks;
+
+import com.lyttledev.lyttlenametag.LyttleNametag;
+import com.lyttledev.lyttlenametag.handlers.NametagHandler;
+import com.lyttledev.lyttlenametag.handlers.NametagRenderer;
+import com.lyttledev.lyttlenametag.types.NametagMetrics;
+import com.lyttledev.lyttlenametag.types.NametagSettings;
+import net.kyori.adventure.text.Component;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.Map;
+
+// NametagRenderer per owner per refresh: compiling the template on reload, the first render of a tag,
+// and the steady-state refresh where the owner moved and only the coordinate line is re-parsed.
+// PlaceholderAPI is not installed, placeholders resolve to their own text through the placeholder cache.
+@State(Scope.Thread)
+public class TemplateRenderBenchmark {
+    private static final String TEMPLATE = """
+            <gray>%luckperms_prefix%</gray>
+            <gray><PLAYER></gray>
+            <dark_gray>@</dark_gray> <yellow><X> <Y> <Z></yellow>
+            <yellow>%vault_eco_balance_formatted%</yellow> <gold>Tokens</gold>
+            <red>🖤 %math_0:0_({player_health})%<dark_grey>/20""";
+
+    private NametagRenderer renderer;
+    private NametagSettings settings;
+    private Player player;
+    private NametagHandler.NametagEntity entity;
+    private Location location;
+    private long tick;
+
+    @Setup
+    public void setup() {
+        BenchmarkServer.install();
+        LyttleNametag plugin = BenchmarkServer.plugin(Map.of("nametag", TEMPLATE));
+        settings = NametagSettings.load(plugin.config.general, plugin.getLogger());
+        renderer = new NametagRenderer(new NametagMetrics(), 1.8D);
+        renderer.compile(settings);
+
+        World world = BenchmarkServer.world("world");
+        location = new Location(world, 0.5D, 64.0D, 0.5D);
+        player = BenchmarkServer.player("Steve", 1, () -> location);
+        entity = newEntity();
+        renderer.renderLinesBottomUp(player, entity, tick);
+    }
+
+    private NametagHandler.NametagEntity newEntity() {
+        return new NametagHandler.NametagEntity(new int[renderer.getLineCount()], List.<Component>of(), false);
+    }
+
+    @Benchmark
+    public void compile() {
+        renderer.compile(settings);
+    }
+
+    @Benchmark
+    public void firstRender(Blackhole blackhole) {
+        blackhole.consume(renderer.renderLinesBottomUp(player, newEntity(), ++tick));
+    }
+
+    @Benchmark
+    public void refreshRender(Blackhole blackhole) {
+        // A block further every refresh, like the owner's move event invalidating the position tokens
+        location.setX(location.getX() + 1.0D);
+        entity.invalidateTokens();
+        blackhole.consume(renderer.renderLinesBottomUp(player, entity, ++tick));
+    }
+}
@@ -0,0 +1,67 @@
+package com.lyttledev.lyttlenametag.handlers;
+
+import com.lyttledev.lyttlenametag.benchmarks.BenchmarkServer;
+import net.kyori.adventure.text.Component;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+// One visibility sweep of the real NametagHandler (enforceViewerVisibility for every viewer row) over stubbed players,
+// a few of them hop worlds between sweeps, so the flipped pairs also build their spawn and destroy packets.
+// In the handler's package, the row enforcement is not part of the plugin's public API.
+@State(Scope.Thread)
+public class VisibilityMatrixBenchmark {
+    @Param({"50", "200", "500"})
+    public int players;
+
+    private final Random random = new Random(42);
+    private final List<Player> online = new ArrayList<>();
+    private World[] worlds;
+    private Location[] locations; // per player, read by the player stubs
+    private NametagHandler handler;
+
+    @Setup
+    public void setup() {
+        BenchmarkServer.install();
+        worlds = new World[]{BenchmarkServer.world("world"), BenchmarkServer.world("world_nether"), BenchmarkServer.world("world_the_end")};
+        locations = new Location[players];
+        for (int i = 0; i < players; i++) {
+            int index = i;
+            locations[i] = new Location(worlds[0], random.nextInt(32), 64.0D, random.nextInt(32));
+            online.add(BenchmarkServer.player("Player" + i, i + 1, () -> locations[index]));
+        }
+        // Everyone in one world while the handler starts, so the server tracks every pair; the world check decides
+        handler = new NametagHandler(BenchmarkServer.plugin(Map.of(
+                "async_placeholders", false,
+                "viewer_packet_budget", 0,
+                "adaptive_interval", false)));
+        for (int i = 0; i < players; i++) {
+            locations[i].setWorld(worlds[random.nextInt(worlds.length)]);
+        }
+        for (Player player : online) {
+            handler.onPlayerJoin(new PlayerJoinEvent(player, Component.empty()));
+        }
+    }
+
+    @Benchmark
+    public void enforceVisibilityMatrix() {
+        // A couple of world changes per sweep, as on a busy server
+        for (int i = 0; i < 2; i++) {
+            locations[random.nextInt(players)].setWorld(worlds[random.nextInt(worlds.length)]);
+        }
+        for (Player viewer : online) {
+            handler.enforceViewerVisibility(viewer);
+        }
+    }
+}
@@ -0,0 +1,388 @@
+package com.lyttledev.lyttlenametag.loadtest;
+
+import com.lyttledev.lyttlenametag.LyttleNametag;
+import com.lyttledev.lyttlenametag.handlers.NametagHandler;
+import com.lyttledev.lyttlenametag.handlers.NametagPackets;
+import com.lyttledev.lyttlenametag.types.Configs;
+import com.lyttledev.lyttlenametag.types.NametagMetrics;
+import com.lyttledev.lyttleutils.types.Message.Replacements;
+import com.lyttledev.lyttleutils.types.YamlConfig;
+import com.lyttledev.lyttleutils.utils.communication.Message;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import org.bukkit.Location;
+import org.bukkit.World;
+import org.bukkit.configuration.file.YamlConfiguration;
+import org.bukkit.entity.Player;
+import org.bukkit.event.player.PlayerChangedWorldEvent;
+import org.bukkit.event.player.PlayerJoinEvent;
+import org.bukkit.event.player.PlayerQuitEvent;
+import org.bukkit.event.player.PlayerTeleportEvent;
+import org.bukkit.event.player.PlayerToggleSneakEvent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntConsumer;
+import java.util.logging.Handler;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Drives NametagHandler with simulated players through scripted scenarios (join storm, sneak spam, mass teleport,
+// world hop, config reload) and reports packets and bytes per viewer, tick time and peak heap per scenario.
+// Exits with 1 when a scenario exceeds a budget in loadtest-budgets.properties, so ./gradlew loadTest fails, and when
+// a shared broadcast whose write fails in a viewer's pipeline is not resent to that viewer.
+// Packet budgets are per tracked (viewer, owner) pair: that figure stays flat with the player count, unless a
+// per-pair cost turned quadratic. Tick times include the overhead of the mocks, compare them between runs only.
+public final class LoadTest {
+    private static final Logger LOGGER = Logger.getLogger("LoadTest");
+    private static final int SCENARIO_TICKS = 200;
+    private static final double COUNT_HEADROOM = 1.05D; // packets and bytes are deterministic for a player count
+    private static final double TIME_HEADROOM = 1.25D; // tick time and heap vary between runs
+    private static final double HUB_RADIUS = 24.0D; // everyone joins at spawn, within tracking range of each other
+
+    private final Random random = new Random(42);
+    private final PacketRecorder recorder = new PacketRecorder();
+    private final SimulatedServer server = new SimulatedServer(recorder);
+    private final YamlConfiguration config = loadDefaultConfig();
+    private final List<Player> players = new ArrayList<>();
+    private NametagHandler handler;
+
+    public static void main(String[] args) throws IOException {
+        int playerCount = Integer.getInteger("loadtest.players", 200);
+        Properties budgets = new Properties();
+        try (InputStream in = LoadTest.class.getResourceAsStream("/loadtest-budgets.properties")) {
+            if (in != null) budgets.load(in);
+        }
+
+        // The plugin's own loggers report the fallbacks that would make the byte counts measure another path
+        FallbackWatch fallbacks = new FallbackWatch();
+        Logger.getLogger("").addHandler(fallbacks);
+
+        LoadTest test = new LoadTest();
+        List<Result> results = test.run(playerCount);
+
+        LOGGER.info(String.format("LyttleNametag load test, %d players", playerCount));
+        LOGGER.info(String.format("%-14s %8s %8s %14s %18s %8s %10s %10s %8s",
+                "scenario", "mean ms", "max ms", "packets/viewer", "bytes/viewer", "pairs", "pkts/pair", "bytes/pair", "heap MB"));
+        for (Result result : results) {
+            LOGGER.info(String.format(Locale.ROOT, "%-14s %8.2f %8.2f %6.0f / %-6d %8.0f / %-8d %8d %10.2f %10.1f %8d",
+                    result.scenario(), result.meanTickMs(), result.maxTickMs(),
+                    result.meanPacketsPerViewer(), result.maxPacketsPerViewer(),
+                    result.meanBytesPerViewer(), result.maxBytesPerViewer(),
+                    result.pairs(), result.packetsPerPair(), result.bytesPerPair(), result.peakHeapMb()));
+        }
+        if (!fallbacks.messages.isEmpty() || !test.recorder.isSizingAvailable()) {
+            // Neither a baseline nor a budget check means anything when the broadcast path was not the one measured
+            fallbacks.messages.forEach(message -> LOGGER.severe("Fallback: " + message));
+            if (!test.recorder.isSizingAvailable()) LOGGER.severe("Byte counts are not available, see the error above");
+            System.exit(1);
+        }
+        if (!test.checkSharedWriteFailure(fallbacks)) {
+            LOGGER.severe("A failed shared write was not resent to its viewer, see the figures above");
+            System.exit(1);
+        }
+
+        String baseline = System.getProperty("loadtest.baseline");
+        if (baseline != null) {
+            writeBaseline(Path.of(baseline), results);
+            System.exit(0);
+        }
+
+        List<String> failures = new ArrayList<>();
+        for (Result result : results) {
+            check(budgets, result, "mean_tick_ms", result.meanTickMs(), failures);
+            check(budgets, result, "max_tick_ms", result.maxTickMs(), failures);
+            check(budgets, result, "packets_per_pair", result.packetsPerPair(), failures);
+            check(budgets, result, "bytes_per_pair", result.bytesPerPair(), failures);
+            check(budgets, result, "peak_heap_mb", result.peakHeapMb(), failures);
+        }
+        if (failures.isEmpty()) {
+            LOGGER.info("All budgets met");
+            System.exit(0);
+        }
+        failures.forEach(failure -> LOGGER.severe("Over budget: " + failure));
+        System.exit(1);
+    }
+
+    // Budgets from this run's figures plus headroom, replaces the budgets file
+    private static void writeBaseline(Path path, List<Result> results) throws IOException {
+        StringBuilder out = new StringBuilder();
+        out.append("# Budgets of ./gradlew loadTest, per scenario: <scenario>.<metric>=<maximum>. A missing key fails the check.\n")
+                .append("# Generated by ./gradlew loadTest -PloadTestBaseline from a run with ")
+                .append(Integer.getInteger("loadtest.players", 200)).append(" players, ")
+                .append(String.format(Locale.ROOT, "%.0f%% headroom on packets and bytes, %.0f%% on tick time and heap.\n",
+                        (COUNT_HEADROOM - 1) * 100, (TIME_HEADROOM - 1) * 100))
+                .append("# Pair budgets do not depend on the player count, a value that grows with -PloadTestPlayers is a quadratic cost.\n")
+                .append("# Byte counts include the encode-once text broadcasts, a run where they fell back to per-viewer writes fails.\n");
+        for (Result result : results) {
+            out.append('\n');
+            baseline(out, result, "packets_per_pair", result.packetsPerPair(), COUNT_HEADROOM);
+            baseline(out, result, "bytes_per_pair", result.bytesPerPair(), COUNT_HEADROOM);
+            baseline(out, result, "mean_tick_ms", result.meanTickMs(), TIME_HEADROOM);
+            baseline(out, result, "max_tick_ms", result.maxTickMs(), TIME_HEADROOM);
+            baseline(out, result, "peak_heap_mb", result.peakHeapMb(), TIME_HEADROOM);
+        }
+        Files.writeString(path, out.toString(), StandardCharsets.UTF_8);
+        LOGGER.info("Wrote baseline budgets to " + path);
+    }
+
+    private static void baseline(StringBuilder out, Result result, String metric, double value, double headroom) {
+        out.append(result.scenario()).append('.').append(metric).append('=')
+                .append(String.format(Locale.ROOT, "%.2f", Math.max(value, 0.01D) * headroom)).append('\n');
+    }
+
+    // Every metric needs a budget, a scenario without one would pass whatever it costs
+    private static void check(Properties budgets, Result result, String metric, double value, List<String> failures) {
+        String budget = budgets.getProperty(result.scenario() + "." + metric);
+        if (budget == null) {
+            failures.add(String.format("%s %s = %.2f (no budget, run ./gradlew loadTest -PloadTestBaseline)", result.scenario(), metric, value));
+            return;
+        }
+        if (value > Double.parseDouble(budget)) {
+            failures.add(String.format("%s %s = %.2f (budget %s)", result.scenario(), metric, value, budget));
+        }
+    }
+
+    private List<Result> run(int playerCount) {
+        this.handler = new NametagHandler(mockPlugin());
+        World world = server.world("world");
+        for (int i = 0; i < playerCount; i++) {
+            players.add(server.createPlayer("Player" + i, randomLocation(world, HUB_RADIUS)));
+        }
+
+        List<Result> results = new ArrayList<>();
+        int joinsPerTick = Math.max(1, (playerCount + 19) / 20);
+        results.add(scenario("join_storm", tick -> {
+            // Everyone within a second
+            for (int i = tick * joinsPerTick; i < Math.min(playerCount, (tick + 1) * joinsPerTick); i++) {
+                join(players.get(i));
+            }
+        }));
+        results.add(scenario("sneak_spam", tick -> {
+            // Every player toggles every 5 ticks for 5 seconds, then stands up
+            for (int i = 0; i < players.size(); i++) {
+                Player player = players.get(i);
+                if ((tick < 100 && (tick + i) % 5 == 0) || (tick == 100 && server.isSneaking(player))) {
+                    sneak(player, !server.isSneaking(player));
+                }
+            }
+        }));
+        results.add(scenario("mass_teleport", tick -> {
+            if (tick != 0) return;
+            // Spread out over the world, most pairs leave each other's tracking range
+            for (Player player : players) {
+                teleport(player, randomLocation(world, 128.0D));
+            }
+        }));
+        results.add(scenario("world_hop", tick -> {
+            if (tick != 0) return;
+            World nether = server.world("world_nether");
+            for (int i = 0; i < players.size(); i += 2) {
+                teleport(players.get(i), randomLocation(nether, HUB_RADIUS));
+            }
+        }));
+        String nametag = config.getString("nametag", "");
+        results.add(scenario("config_reload", tick -> {
+            // One line more, then back: the grow and the shrink path of the hot reload
+            if (tick == 0) {
+                config.set("nametag", nametag + "\n<gray>%server_online% online</gray>");
+                handler.reload();
+            } else if (tick == 100) {
+                config.set("nametag", nametag);
+                handler.reload();
+            }
+        }));
+
+        for (Player player : players) {
+            handler.onPlayerQuit(new PlayerQuitEvent(player, Component.empty(), PlayerQuitEvent.QuitReason.DISCONNECTED));
+            server.disconnect(player);
+        }
+        handler.shutdown();
+        server.shutdown();
+        return results;
+    }
+
+    // A shared broadcast to two viewers where the second pipeline rejects the write: the first gets the shared buffer,
+    // the second the per-viewer resend, and the failure is reported once
+    private boolean checkSharedWriteFailure(FallbackWatch fallbacks) {
+        World world = server.world("world");
+        Player accepting = server.createPlayer("SharedWriteAccepted", randomLocation(world, HUB_RADIUS));
+        Player rejecting = server.createPlayer("SharedWriteRejected", randomLocation(world, HUB_RADIUS));
+        recorder.reset();
+        recorder.connect(accepting);
+        recorder.connectRejectingWrites(rejecting);
+
+        NametagPackets packets = new NametagPackets(Logger.getLogger("LyttleNametag"), new NametagMetrics(), false);
+        packets.broadcast(List.of(accepting, rejecting), packets.textMetadata(Integer.MAX_VALUE, Component.text("Load test")));
+        packets.shutdown();
+        recorder.flush();
+
+        long[] shared = recorder.getTotals().getOrDefault(accepting, new long[2]);
+        long[] resent = recorder.getTotals().getOrDefault(rejecting, new long[2]);
+        long failures = fallbacks.messages.stream().filter(message -> message.startsWith("Shared packet write failed")).count();
+        recorder.disconnect(accepting);
+        recorder.disconnect(rejecting);
+        LOGGER.info(String.format("Shared write failure: %d shared packets, %d resent packets, %d failures reported",
+                shared[0], resent[0], failures));
+        return shared[0] == 1 && shared[1] > 0 && resent[0] == 1 && failures == 1;
+    }
+
+    // Run the script before each tick, the script's events count towards the tick time like on a real server
+    private Result scenario(String name, IntConsumer script) {
+        recorder.reset();
+        resetPeakHeap();
+        long totalNanos = 0;
+        long maxNanos = 0;
+        long pairs = 0;
+        for (int tick = 0; tick < SCENARIO_TICKS; tick++) {
+            long start = System.nanoTime();
+            script.accept(tick);
+            server.tick();
+            long nanos = System.nanoTime() - start;
+            recorder.flush();
+            totalNanos += nanos;
+            maxNanos = Math.max(maxNanos, nanos);
+            pairs = Math.max(pairs, server.getTrackedPairs());
+        }
+
+        long packets = 0;
+        long bytes = 0;
+        long maxPackets = 0;
+        long maxBytes = 0;
+        for (long[] total : recorder.getTotals().values()) {
+            packets += total[0];
+            bytes += total[1];
+            maxPackets = Math.max(maxPackets, total[0]);
+            maxBytes = Math.max(maxBytes, total[1]);
+        }
+        int viewers = Math.max(1, server.getOnlinePlayers().size());
+        long pairCount = Math.max(1, pairs);
+        return new Result(name, totalNanos / 1e6 / SCENARIO_TICKS, maxNanos / 1e6,
+                (double) packets / viewers, maxPackets, (double) bytes / viewers, maxBytes,
+                pairs, (double) packets / pairCount, (double) bytes / pairCount, peakHeapMb());
+    }
+
+    private void join(Player player) {
+        server.connect(player);
+        handler.onPlayerJoin(new PlayerJoinEvent(player, Component.empty()));
+    }
+
+    private void sneak(Player player, boolean sneaking) {
+        handler.onPlayerToggleSneak(new PlayerToggleSneakEvent(player, sneaking));
+        server.setSneaking(player, sneaking);
+    }
+
+    // Teleport event before the move, changed world event after it
+    private void teleport(Player player, Location to) {
+        Location from = player.getLocation();
+        handler.onPlayerTeleport(new PlayerTeleportEvent(player, from, to));
+        server.move(player, to);
+        if (from.getWorld() != to.getWorld()) {
+            handler.onPlayerChangedWorld(new PlayerChangedWorldEvent(player, from.getWorld()));
+        }
+    }
+
+    private Location randomLocation(World world, double radius) {
+        double x = (random.nextDouble() * 2 - 1) * radius;
+        double z = (random.nextDouble() * 2 - 1) * radius;
+        return new Location(world, x, 64.0D, z);
+    }
+
+    private LyttleNametag mockPlugin() {
+        LyttleNametag plugin = mock(LyttleNametag.class);
+        // Async renders are only applied while the plugin is enabled
+        when(plugin.isEnabled()).thenReturn(true);
+        when(plugin.getLogger()).thenReturn(Logger.getLogger("LyttleNametag"));
+        when(plugin.getServer()).thenReturn(server.getServer());
+        when(plugin.getName()).thenReturn("LyttleNametag");
+        try {
+            when(plugin.getDataFolder()).thenReturn(Files.createTempDirectory("lyttlenametag-loadtest").toFile());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        // Settings are read through config.general, backed by the bundled default config.yml
+        YamlConfig general = mock(YamlConfig.class);
+        when(general.get(anyString())).thenAnswer(invocation -> config.get(invocation.getArgument(0)));
+        plugin.config = mock(Configs.class);
+        plugin.config.general = general;
+
+        MiniMessage miniMessage = MiniMessage.miniMessage();
+        Message message = mock(Message.class);
+        when(message.getMessageRaw(anyString(), any(Replacements.class), any()))
+                .thenAnswer(invocation -> miniMessage.deserialize((String) invocation.getArgument(0)));
+        plugin.message = message;
+        return plugin;
+    }
+
+    private static YamlConfiguration loadDefaultConfig() {
+        InputStream in = LoadTest.class.getResourceAsStream("/config.yml");
+        if (in == null) throw new IllegalStateException("config.yml is not on the classpath");
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return YamlConfiguration.loadConfiguration(reader);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) pool.resetPeakUsage();
+        }
+    }
+
+    // Sum of the heap pools' peaks since the last reset
+    private static long peakHeapMb() {
+        long bytes = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) bytes += pool.getPeakUsage().getUsed();
+        }
+        return bytes / (1024 * 1024);
+    }
+
+    // Collects the warnings of a shared broadcast that fell back to per-viewer writes
+    private static final class FallbackWatch extends Handler {
+        private final List<String> messages = new CopyOnWriteArrayList<>();
+
+        @Override
+        public void publish(LogRecord record) {
+            String message = record.getMessage();
+            if (message != null && message.startsWith("Shared packet ")) {
+                messages.add(message);
+            }
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private record Result(String scenario, double meanTickMs, double maxTickMs,
+                          double meanPacketsPerViewer, long maxPacketsPerViewer,
+                          double meanBytesPerViewer, long maxBytesPerViewer,
+                          long pairs, double packetsPerPair, double bytesPerPair, long peakHeapMb) {
+    }
+}
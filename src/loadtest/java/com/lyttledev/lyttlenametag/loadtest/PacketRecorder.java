@@ -0,0 +1,191 @@
+package com.lyttledev.lyttlenametag.loadtest;
+
+import com.github.retrooper.packetevents.PacketEvents;
+import com.github.retrooper.packetevents.PacketEventsAPI;
+import com.github.retrooper.packetevents.event.EventManager;
+import com.github.retrooper.packetevents.event.PacketListenerCommon;
+import com.github.retrooper.packetevents.manager.player.PlayerManager;
+import com.github.retrooper.packetevents.manager.protocol.ProtocolManager;
+import com.github.retrooper.packetevents.manager.server.ServerVersion;
+import com.github.retrooper.packetevents.netty.buffer.ByteBufHelper;
+import com.github.retrooper.packetevents.netty.buffer.UnpooledByteBufAllocationHelper;
+import com.github.retrooper.packetevents.protocol.ConnectionState;
+import com.github.retrooper.packetevents.protocol.player.ClientVersion;
+import com.github.retrooper.packetevents.protocol.player.User;
+import com.github.retrooper.packetevents.protocol.player.UserProfile;
+import com.github.retrooper.packetevents.wrapper.PacketWrapper;
+import com.lyttledev.lyttlenametag.handlers.EntityTrackerListener;
+import io.github.retrooper.packetevents.impl.netty.manager.NettyManagerImpl;
+import io.github.retrooper.packetevents.injector.handlers.PacketEventsEncoder;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import org.bukkit.entity.Player;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.logging.Logger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.RETURNS_DEEP_STUBS;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Stubbed PacketEvents API that records every packet the plugin writes, per viewer. Packets are only sized after the
+// tick (outside the measured tick time), sizes are the encoded payload without packet id and frame length.
+// Every viewer gets an EmbeddedChannel with PacketEvents' encoder in its pipeline, so the encode-once broadcast path of
+// NametagPackets runs as on a server and its shared buffers are counted as they leave the pipeline. If their encoding or
+// write fails NametagPackets logs it and falls back to per-viewer writes.
+public class PacketRecorder {
+    private static final Logger LOGGER = Logger.getLogger("LoadTest");
+    private final Map<Player, User> users = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedQueue<Sent> sent = new ConcurrentLinkedQueue<>();
+    private final Map<Player, long[]> totals = new ConcurrentHashMap<>(); // viewer -> {packets, bytes}
+    private EntityTrackerListener trackerListener;
+    private boolean sizingFailed;
+
+    @SuppressWarnings("unchecked")
+    public PacketRecorder() {
+        PacketEventsAPI<Object> api = mock(PacketEventsAPI.class, RETURNS_DEEP_STUBS);
+        when(api.getServerManager().getVersion()).thenReturn(ServerVersion.V_1_21);
+        when(api.getNettyManager()).thenReturn(new NettyManagerImpl());
+
+        PlayerManager playerManager = mock(PlayerManager.class);
+        when(api.getPlayerManager()).thenReturn(playerManager);
+        when(playerManager.getUser(any())).thenAnswer(invocation -> users.get((Player) invocation.getArgument(0)));
+        doAnswer(invocation -> record(invocation.getArgument(0), invocation.getArgument(1)))
+                .when(playerManager).sendPacket(any(), any(PacketWrapper.class));
+
+        ProtocolManager protocolManager = mock(ProtocolManager.class);
+        when(api.getProtocolManager()).thenReturn(protocolManager);
+        // Read by the encoding against a viewer's channel
+        when(protocolManager.getClientVersion(any())).thenReturn(ClientVersion.V_1_21);
+
+        EventManager eventManager = mock(EventManager.class);
+        when(api.getEventManager()).thenReturn(eventManager);
+        when(eventManager.registerListener(any(PacketListenerCommon.class))).thenAnswer(invocation -> {
+            if (invocation.getArgument(0) instanceof EntityTrackerListener listener) {
+                this.trackerListener = listener;
+            }
+            return invocation.getArgument(0);
+        });
+
+        PacketEvents.setAPI(api);
+    }
+
+    // The connection of a simulated player, shared buffers written to its channel are read back in flush
+    public void connect(Player player) {
+        connect(player, false);
+    }
+
+    // A connection whose pipeline fails every write after PacketEvents' encoder, like a broken handler further down
+    public void connectRejectingWrites(Player player) {
+        connect(player, true);
+    }
+
+    private void connect(Player player, boolean rejectWrites) {
+        User user = mock(User.class);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        if (rejectWrites) channel.pipeline().addLast(new RejectWrites());
+        User connection = new User(channel, ConnectionState.PLAY, ClientVersion.V_1_21,
+                new UserProfile(player.getUniqueId(), player.getName()));
+        channel.pipeline().addLast(new PacketEventsEncoder(connection));
+        when(user.getClientVersion()).thenReturn(ClientVersion.V_1_21);
+        when(user.getChannel()).thenReturn(channel);
+        doAnswer(invocation -> record(player, invocation.getArgument(0))).when(user).writePacket(any(PacketWrapper.class));
+        doAnswer(invocation -> record(player, invocation.getArgument(0))).when(user).sendPacket(any(PacketWrapper.class));
+        users.put(player, user);
+    }
+
+    public void disconnect(Player player) {
+        User user = users.remove(player);
+        if (user != null) ((EmbeddedChannel) user.getChannel()).finishAndReleaseAll();
+    }
+
+    public EntityTrackerListener getTrackerListener() {
+        return trackerListener;
+    }
+
+    private Object record(Object viewer, PacketWrapper<?> packet) {
+        if (viewer instanceof Player player) {
+            sent.add(new Sent(player, packet, -1));
+        }
+        return null;
+    }
+
+    // Buffers that made it through a viewer's pipeline, counted as they were written
+    private void drainChannels() {
+        users.forEach((player, user) -> {
+            EmbeddedChannel channel = (EmbeddedChannel) user.getChannel();
+            Object buffer;
+            while ((buffer = channel.readOutbound()) != null) {
+                sent.add(new Sent(player, null, ByteBufHelper.readableBytes(buffer)));
+                ByteBufHelper.release(buffer);
+            }
+        });
+    }
+
+    // Size and count everything sent since the last call, a wrapper written to several viewers is encoded once
+    public void flush() {
+        drainChannels();
+        Map<PacketWrapper<?>, Integer> sizes = new IdentityHashMap<>();
+        Sent entry;
+        while ((entry = sent.poll()) != null) {
+            long[] total = totals.computeIfAbsent(entry.viewer(), viewer -> new long[2]);
+            total[0]++;
+            if (entry.packet() == null) {
+                total[1] += entry.bytes();
+            } else {
+                total[1] += sizes.computeIfAbsent(entry.packet(), this::encodedSize);
+            }
+        }
+    }
+
+    private int encodedSize(PacketWrapper<?> packet) {
+        if (sizingFailed) return 0;
+        Object buffer = null;
+        try {
+            buffer = UnpooledByteBufAllocationHelper.buffer();
+            packet.setBuffer(buffer);
+            packet.write();
+            return ByteBufHelper.readableBytes(buffer);
+        } catch (Exception e) {
+            sizingFailed = true;
+            LOGGER.warning("Packet sizing failed, byte counts are not available: " + e);
+            return 0;
+        } finally {
+            packet.setBuffer(null);
+            if (buffer != null) ByteBufHelper.release(buffer);
+        }
+    }
+
+    public boolean isSizingAvailable() {
+        return !sizingFailed;
+    }
+
+    // Packet and byte totals per viewer since the last reset
+    public Map<Player, long[]> getTotals() {
+        return totals;
+    }
+
+    public void reset() {
+        flush();
+        totals.clear();
+    }
+
+    private static final class RejectWrites extends ChannelOutboundHandlerAdapter {
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) {
+            ReferenceCountUtil.release(msg);
+            promise.setFailure(new IllegalStateException("write rejected by the load test"));
+        }
+    }
+
+    private record Sent(Player viewer, PacketWrapper<?> packet, int bytes) {
+    }
+}
@@ -0,0 +1,311 @@
+package com.lyttledev.lyttlenametag.loadtest;
+
+import io.papermc.paper.threadedregions.scheduler.AsyncScheduler;
+import io.papermc.paper.threadedregions.scheduler.EntityScheduler;
+import io.papermc.paper.threadedregions.scheduler.GlobalRegionScheduler;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import net.kyori.adventure.text.Component;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.Server;
+import org.bukkit.World;
+import org.bukkit.entity.Entity;
+import org.bukkit.entity.Player;
+import org.bukkit.plugin.Plugin;
+import org.bukkit.plugin.PluginManager;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+// Just enough of a Paper server for the nametag handler: online players, the global, entity and async schedulers
+// driven tick by tick, and an entity tracker that spawns and destroys player entities for each other by distance.
+public class SimulatedServer {
+    // Default spigot.yml entity-tracking-range for players
+    private static final double TRACKING_RANGE = 48.0D;
+
+    private final Server server = mock(Server.class);
+    private final PacketRecorder recorder;
+    private final Map<String, World> worlds = new HashMap<>();
+    private final List<Player> online = new CopyOnWriteArrayList<>();
+    private final Map<UUID, Player> onlineById = new ConcurrentHashMap<>();
+    private final Map<Player, State> states = new ConcurrentHashMap<>();
+    private final List<Player> players = new ArrayList<>(); // index = entity ID - 1
+    private final Set<Player> trackingDirty = new LinkedHashSet<>();
+    private boolean[][] tracked = new boolean[0][0]; // [viewer][owner] by player index
+
+    private final PriorityQueue<Scheduled> due = new PriorityQueue<>(
+            Comparator.comparingLong((Scheduled task) -> task.due).thenComparingLong(task -> task.order));
+    private final ConcurrentLinkedQueue<Scheduled> incoming = new ConcurrentLinkedQueue<>();
+    private final AtomicLong order = new AtomicLong();
+    private final ExecutorService async = Executors.newCachedThreadPool(Thread.ofPlatform().daemon().name("loadtest-async-", 0).factory());
+    private volatile long currentTick;
+
+    public SimulatedServer(PacketRecorder recorder) {
+        this.recorder = recorder;
+
+        GlobalRegionScheduler global = mock(GlobalRegionScheduler.class);
+        when(global.runAtFixedRate(any(), any(), anyLong(), anyLong()))
+                .thenAnswer(invocation -> schedule(invocation.getArgument(1), invocation.getArgument(2), invocation.getArgument(3), () -> true));
+        when(global.runDelayed(any(), any(), anyLong()))
+                .thenAnswer(invocation -> schedule(invocation.getArgument(1), invocation.getArgument(2), 0L, () -> true));
+
+        AsyncScheduler asyncScheduler = mock(AsyncScheduler.class);
+        when(asyncScheduler.runNow(any(), any())).thenAnswer(invocation -> {
+            Consumer<ScheduledTask> task = invocation.getArgument(1);
+            Scheduled scheduled = new Scheduled(task, currentTick, 0L, () -> true);
+            async.execute(() -> task.accept(scheduled));
+            return scheduled;
+        });
+
+        when(server.getLogger()).thenReturn(Logger.getLogger("Server"));
+        when(server.getName()).thenReturn("LoadTest");
+        when(server.getVersion()).thenReturn("loadtest");
+        when(server.getBukkitVersion()).thenReturn("loadtest");
+        doReturn(Collections.unmodifiableList(online)).when(server).getOnlinePlayers();
+        when(server.getPlayer(any(UUID.class))).thenAnswer(invocation -> onlineById.get((UUID) invocation.getArgument(0)));
+        when(server.getPluginManager()).thenReturn(mock(PluginManager.class));
+        when(server.getGlobalRegionScheduler()).thenReturn(global);
+        when(server.getAsyncScheduler()).thenReturn(asyncScheduler);
+        when(server.getCurrentTick()).thenAnswer(invocation -> (int) currentTick);
+        // A healthy server, the adaptive interval only reacts to the plugin's own cost
+        when(server.getTPS()).thenReturn(new double[]{20.0D, 20.0D, 20.0D});
+        // Paper: the main thread owns everything
+        when(server.isOwnedByCurrentRegion(any(Entity.class))).thenReturn(true);
+        Bukkit.setServer(server);
+    }
+
+    public Server getServer() {
+        return server;
+    }
+
+    public World world(String name) {
+        return worlds.computeIfAbsent(name, key -> {
+            World world = mock(World.class);
+            UUID id = UUID.nameUUIDFromBytes(key.getBytes());
+            when(world.getUID()).thenReturn(id);
+            when(world.getName()).thenReturn(key);
+            return world;
+        });
+    }
+
+    // A player that is not online yet, entity IDs count up from 1
+    public Player createPlayer(String name, Location location) {
+        Player player = mock(Player.class);
+        State state = new State(players.size(), location);
+        UUID id = UUID.nameUUIDFromBytes(("LoadTest:" + name).getBytes());
+        when(player.getUniqueId()).thenReturn(id);
+        when(player.getEntityId()).thenReturn(players.size() + 1);
+        when(player.getName()).thenReturn(name);
+        when(player.displayName()).thenReturn(Component.text(name));
+        when(player.getLocation()).thenAnswer(invocation -> state.location.clone());
+        when(player.getWorld()).thenAnswer(invocation -> state.location.getWorld());
+        when(player.isOnline()).thenAnswer(invocation -> state.online);
+        when(player.isSneaking()).thenAnswer(invocation -> state.sneaking);
+        when(player.canSee(any(Player.class))).thenReturn(true);
+
+        EntityScheduler scheduler = mock(EntityScheduler.class);
+        // Retired (dropped) once the player is removed, like Paper's entity scheduler
+        when(scheduler.run(any(), any(), any())).thenAnswer(invocation -> state.online
+                ? schedule(invocation.getArgument(1), 1L, 0L, () -> state.online) : null);
+        when(scheduler.runDelayed(any(), any(), any(), anyLong())).thenAnswer(invocation -> state.online
+                ? schedule(invocation.getArgument(1), invocation.getArgument(3), 0L, () -> state.online) : null);
+        when(player.getScheduler()).thenReturn(scheduler);
+
+        players.add(player);
+        states.put(player, state);
+        return player;
+    }
+
+    // Online before the join event, tracked by the others from the next tick
+    public void connect(Player player) {
+        State state = states.get(player);
+        state.online = true;
+        online.add(player);
+        onlineById.put(player.getUniqueId(), player);
+        recorder.connect(player);
+        trackingDirty.add(player);
+    }
+
+    // After the quit event: the server destroys the player entity for everyone that tracked it
+    public void disconnect(Player player) {
+        State state = states.get(player);
+        state.online = false;
+        online.remove(player);
+        onlineById.remove(player.getUniqueId());
+        trackingDirty.remove(player);
+        for (Player other : players) {
+            int otherIndex = states.get(other).index;
+            setTracked(other, player, tracked(otherIndex, state.index), false);
+            setTracked(player, other, tracked(state.index, otherIndex), false);
+        }
+        recorder.disconnect(player);
+    }
+
+    public void move(Player player, Location location) {
+        states.get(player).location = location.clone();
+        trackingDirty.add(player);
+    }
+
+    public void setSneaking(Player player, boolean sneaking) {
+        states.get(player).sneaking = sneaking;
+    }
+
+    public boolean isSneaking(Player player) {
+        return states.get(player).sneaking;
+    }
+
+    public List<Player> getOnlinePlayers() {
+        return online;
+    }
+
+    // (viewer, owner) pairs whose client currently has the owner's entity
+    public long getTrackedPairs() {
+        long pairs = 0;
+        for (boolean[] row : tracked) {
+            for (boolean pair : row) {
+                if (pair) pairs++;
+            }
+        }
+        return pairs;
+    }
+
+    // Run one server tick: entity tracker first, then every task that is due
+    public void tick() {
+        currentTick++;
+        updateTracking();
+        while (true) {
+            Scheduled task;
+            while ((task = incoming.poll()) != null) {
+                due.add(task);
+            }
+            Scheduled next = due.peek();
+            if (next == null || next.due > currentTick) break;
+            due.poll();
+            if (next.cancelled || !next.alive.getAsBoolean()) continue;
+            next.task.accept(next);
+            if (next.period > 0 && !next.cancelled) {
+                next.due += next.period;
+                incoming.add(next);
+            }
+        }
+    }
+
+    public void shutdown() {
+        async.shutdownNow();
+    }
+
+    private Scheduled schedule(Consumer<ScheduledTask> task, long delay, long period, BooleanSupplier alive) {
+        Scheduled scheduled = new Scheduled(task, currentTick + Math.max(1L, delay), period, alive);
+        incoming.add(scheduled);
+        return scheduled;
+    }
+
+    private void updateTracking() {
+        if (trackingDirty.isEmpty()) return;
+        if (tracked.length < players.size()) {
+            boolean[][] grown = new boolean[players.size()][players.size()];
+            for (int i = 0; i < tracked.length; i++) {
+                System.arraycopy(tracked[i], 0, grown[i], 0, tracked[i].length);
+            }
+            tracked = grown;
+        }
+        for (Player moved : trackingDirty) {
+            State state = states.get(moved);
+            for (Player other : online) {
+                if (other == moved) continue;
+                State otherState = states.get(other);
+                boolean inRange = inRange(state.location, otherState.location);
+                setTracked(other, moved, tracked(otherState.index, state.index), inRange);
+                setTracked(moved, other, tracked(state.index, otherState.index), inRange);
+            }
+        }
+        trackingDirty.clear();
+    }
+
+    private boolean tracked(int viewer, int owner) {
+        return viewer < tracked.length && owner < tracked[viewer].length && tracked[viewer][owner];
+    }
+
+    private void setTracked(Player viewer, Player owner, boolean was, boolean now) {
+        if (was == now) return;
+        tracked[states.get(viewer).index][states.get(owner).index] = now;
+        // The spawn/destroy packet the plugin's tracker listener would have seen
+        recorder.getTrackerListener().onPlayerEntity(viewer, owner.getEntityId(), now);
+    }
+
+    private static boolean inRange(Location a, Location b) {
+        return a.getWorld() == b.getWorld() && a.distanceSquared(b) <= TRACKING_RANGE * TRACKING_RANGE;
+    }
+
+    private static final class State {
+        private final int index;
+        private volatile Location location;
+        private volatile boolean online;
+        private volatile boolean sneaking;
+
+        private State(int index, Location location) {
+            this.index = index;
+            this.location = location.clone();
+        }
+    }
+
+    private final class Scheduled implements ScheduledTask {
+        private final Consumer<ScheduledTask> task;
+        private final long period;
+        private final long order = SimulatedServer.this.order.getAndIncrement();
+        private final BooleanSupplier alive;
+        private long due;
+        private volatile boolean cancelled;
+
+        private Scheduled(Consumer<ScheduledTask> task, long due, long period, BooleanSupplier alive) {
+            this.task = task;
+            this.due = due;
+            this.period = period;
+            this.alive = alive;
+        }
+
+        @Override
+        public Plugin getOwningPlugin() {
+            return null;
+        }
+
+        @Override
+        public boolean isRepeatingTask() {
+            return period > 0;
+        }
+
+        @Override
+        public CancelledState cancel() {
+            cancelled = true;
+            return CancelledState.CANCELLED_BY_CALLER;
+        }
+
+        @Override
+        public ExecutionState getExecutionState() {
+            return cancelled ? ExecutionState.CANCELLED : ExecutionState.IDLE;
+        }
+    }
+}
@@ -13,10 +13,12 @@ import com.github.retrooper.packetevents.settings.PacketEventsSettings;
 import io.papermc.paper.command.brigadier.Commands;
 import io.papermc.paper.plugin.lifecycle.event.LifecycleEventManager;
 import io.papermc.paper.plugin.lifecycle.event.types.LifecycleEvents;
+import org.bukkit.configuration.ConfigurationSection;
 import org.bukkit.plugin.Plugin;
 import org.bukkit.plugin.java.JavaPlugin;
 
 import java.io.File;
+import java.util.Map;
 
 public final class LyttleNametag extends JavaPlugin {
     public Configs config;
@@ -77,7 +79,7 @@ public final class LyttleNametag extends JavaPlugin {
 
     @Override
     public void onDisable() {
-        this.nametagHandler.removeAllNametagsOnShutdown();
+        this.nametagHandler.shutdown();
         PacketEvents.getAPI().terminate();
     }
 
@@ -134,6 +136,141 @@ public final class LyttleNametag extends JavaPlugin {
                 // Update config version.
                 config.general.set("config_version", 3);
 
+                // Recheck if the config is fully migrated.
+                migrateConfig();
+                break;
+            case "3":
+                // Migrate config entries.
+                config.general.set("placeholder_refresh", config.defaultGeneral.get("placeholder_refresh"));
+
+                // Update config version.
+                config.general.set("config_version", 4);
+
+                // Recheck if the config is fully migrated.
+                migrateConfig();
+                break;
+            case "4":
+                // Migrate config entries.
+                config.general.set("async_placeholders", config.defaultGeneral.get("async_placeholders"));
+                config.general.set("sync_placeholders", config.defaultGeneral.get("sync_placeholders"));
+
+                // Update config version.
+                config.general.set("config_version", 5);
+
+                // Recheck if the config is fully migrated.
+                migrateConfig();
+                break;
+            case "5":
+                // Migrate config entries.
+                config.general.set("tick_budget_ms", config.defaultGeneral.get("tick_budget_ms"));
+
+                // Update config version.
+                config.general.set("config_version", 6);
+
+                // Recheck if the config is fully migrated.
+                migrateConfig();
+                break;
+            case "6":
+                // Migrate config entries.
+                config.general.set("metrics_dump_interval", config.defaultGeneral.get("metrics_dump_interval"));
+
+                // Update config version.
+                config.general.set("config_version", 7);
+
+                // Recheck if the config is fully migrated.
+                migrateConfig();
+                break;
+            case "7":
+                // Migrate config entries.
+                config.general.set("relation_key", config.defaultGeneral.get("relation_key"));
+
+                // Update config version.
+                config.general.set("config_version", 8);
+
+                // Recheck if the config is fully migrated.
+                migrateConfig();
+                break;
+            case "8":
+                // Migrate config entries.
+                config.general.set("lod_enabled", config.defaultGeneral.get("lod_enabled"));
+                config.general.set("lod_near_distance", config.defaultGeneral.get("lod_near_distance"));
+                config.general.set("lod_mid_distance", config.defaultGeneral.get("lod_mid_distance"));
+                config.general.set("lod_mid_period", config.defaultGeneral.get("lod_mid_period"));
+                config.general.set("lod_far_period", config.defaultGeneral.get("lod_far_period"));
+
+                // Update config version.
+                config.general.set("config_version", 9);
+
+                // Recheck if the config is fully migrated.
+                migrateConfig();
+                break;
+            case "9":
+                // Migrate config entries.
+                config.general.set("viewer_packet_budget", config.defaultGeneral.get("viewer_packet_budget"));
+
+                // Update config version.
+                config.general.set("config_version", 10);
+
+                // Recheck if the config is fully migrated.
+                migrateConfig();
+                break;
+            case "10":
+                // Migrate config entries.
+                config.general.set("global_placeholders", config.defaultGeneral.get("global_placeholders"));
+
+                // Update config version.
+                config.general.set("config_version", 11);
+
+                // Recheck if the config is fully migrated.
+                migrateConfig();
+                break;
+            case "11":
+                // Migrate config entries.
+                config.general.set("single_entity", config.defaultGeneral.get("single_entity"));
+                config.general.set("single_entity_line_width", config.defaultGeneral.get("single_entity_line_width"));
+
+                // Update config version.
+                config.general.set("config_version", 12);
+
+                // Recheck if the config is fully migrated.
+                migrateConfig();
+                break;
+            case "12":
+                // Migrate config entries.
+                config.general.set("adaptive_interval", config.defaultGeneral.get("adaptive_interval"));
+                config.general.set("adaptive_mspt_high", config.defaultGeneral.get("adaptive_mspt_high"));
+                config.general.set("adaptive_mspt_low", config.defaultGeneral.get("adaptive_mspt_low"));
+                config.general.set("adaptive_tps_low", config.defaultGeneral.get("adaptive_tps_low"));
+                config.general.set("adaptive_max_stretch", config.defaultGeneral.get("adaptive_max_stretch"));
+
+                // Update config version.
+                config.general.set("config_version", 13);
+
+                // Recheck if the config is fully migrated.
+                migrateConfig();
+                break;
+            case "13":
+                // Version 4 shipped example refresh tiers that changed the cadence of existing tags,
+                // an unchanged copy of them goes back to the default (every placeholder on "interval")
+                Object tiers = config.general.get("placeholder_refresh");
+                Map<String, Object> shipped = Map.of("math_", 5, "vault_eco_balance", 100, "luckperms_prefix", "join");
+                if (tiers instanceof ConfigurationSection section ? shipped.equals(section.getValues(false)) : shipped.equals(tiers)) {
+                    config.general.set("placeholder_refresh", config.defaultGeneral.get("placeholder_refresh"));
+                }
+
+                // Update config version.
+                config.general.set("config_version", 14);
+
+                // Recheck if the config is fully migrated.
+                migrateConfig();
+                break;
+            case "14":
+                // Migrate config entries.
+                config.general.set("visibility_interval", config.defaultGeneral.get("visibility_interval"));
+
+                // Update config version.
+                config.general.set("config_version", 15);
+
                 // Recheck if the config is fully migrated.
                 migrateConfig();
                 break;
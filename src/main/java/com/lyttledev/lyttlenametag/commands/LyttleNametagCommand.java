@@ -1,6 +1,7 @@
 package com.lyttledev.lyttlenametag.commands;
 
 import com.lyttledev.lyttlenametag.LyttleNametag;
+import com.lyttledev.lyttlenametag.types.NametagMetrics;
 import com.mojang.brigadier.Command;
 import com.mojang.brigadier.builder.LiteralArgumentBuilder;
 import com.mojang.brigadier.context.CommandContext;
@@ -9,6 +10,9 @@ import io.papermc.paper.command.brigadier.Commands;
 import net.kyori.adventure.text.Component;
 import org.bukkit.command.CommandSender;
 
+import java.util.Locale;
+import java.util.Map;
+
 public class LyttleNametagCommand {
     private static LyttleNametag plugin;
 
@@ -19,7 +23,10 @@ public class LyttleNametagCommand {
         LiteralArgumentBuilder<CommandSourceStack> top = Commands.literal("lyttlenametag")
                 .then(Commands.literal("reload")
                         .requires(source -> source.getSender().hasPermission("lyttlenametag.lyttlenametag.reload"))
-                        .executes(LyttleNametagCommand::reloadNode));
+                        .executes(LyttleNametagCommand::reloadNode))
+                .then(Commands.literal("stats")
+                        .requires(source -> source.getSender().hasPermission("lyttlenametag.lyttlenametag.stats"))
+                        .executes(LyttleNametagCommand::statsNode));
 
         // Defines root node functions
         top.requires(source -> source.getSender().hasPermission("lyttlenametag.lyttlenametag"));
@@ -42,7 +49,33 @@ public class LyttleNametagCommand {
     private static int reloadNode(CommandContext<CommandSourceStack> context) {
         final CommandSender sender = context.getSource().getSender();
         plugin.config.reload();
+        // Applies the changes to the live nametags as well
+        plugin.nametagHandler.reload();
         plugin.message.sendMessageRaw(sender, Component.text("The config has been reloaded"));
         return Command.SINGLE_SUCCESS;
     }
+
+    private static int statsNode(CommandContext<CommandSourceStack> context) {
+        final CommandSender sender = context.getSource().getSender();
+        NametagMetrics metrics = plugin.nametagHandler.getMetrics();
+        // Update cycle = one pass of the update job over every online player
+        double cyclesPerSecond = 20D / plugin.nametagHandler.getUpdatePeriod();
+
+        Map<NametagMetrics.Counter, Double> rates = metrics.rates(); // every rate from the same sample
+
+        StringBuilder stats = new StringBuilder("LyttleNametag stats (per second, total):");
+        for (NametagMetrics.Counter counter : NametagMetrics.Counter.values()) {
+            stats.append(String.format(Locale.ROOT, "\n  %s: %.1f/s (%d)",
+                    counter.key(), rates.get(counter), metrics.get(counter)));
+        }
+        stats.append(String.format(Locale.ROOT, "\n  placeholders_per_cycle: %.1f",
+                rates.get(NametagMetrics.Counter.PLACEHOLDERS_RESOLVED) / cyclesPerSecond));
+        stats.append(String.format(Locale.ROOT, "\n  adaptive_stretch: x%.2f", plugin.nametagHandler.getAdaptiveStretch()));
+        for (NametagMetrics.Timer timer : NametagMetrics.Timer.values()) {
+            stats.append(String.format(Locale.ROOT, "\n  %s: p50 %.3f ms, p99 %.3f ms",
+                    timer.key(), metrics.percentileMillis(timer, 0.5D), metrics.percentileMillis(timer, 0.99D)));
+        }
+        plugin.message.sendMessageRaw(sender, Component.text(stats.toString()));
+        return Command.SINGLE_SUCCESS;
+    }
 }
@@ -0,0 +1,59 @@
+package com.lyttledev.lyttlenametag.handlers;
+
+import com.lyttledev.lyttlenametag.types.NametagSettings;
+import org.bukkit.Bukkit;
+
+// Adaptive refresh cadence: once per second it samples the server's MSPT and TPS and the time the nametag jobs took,
+// and returns the factor all refresh periods and the visibility sweep are stretched by. Under load the factor grows
+// right away, with headroom it only shrinks after a few calm seconds, so nametags yield tick time first and come back last.
+public class AdaptiveInterval {
+    private static final double GROW = 1.5D; // per second under load
+    private static final double SHRINK = 0.8D; // per second with headroom, after CALM_SAMPLES calm seconds
+    private static final int CALM_SAMPLES = 5;
+
+    private volatile double stretch = 1.0D; // read by /lyttlenametag stats
+    private int calmSamples;
+    private boolean serverHealthAvailable = true; // Folia has no global MSPT/TPS, only the own cost is used there
+
+    public double getStretch() {
+        return stretch;
+    }
+
+    public void reset() {
+        stretch = 1.0D;
+        calmSamples = 0;
+    }
+
+    // ownMillisPerTick: average time per tick the nametag jobs took since the previous sample
+    public double sample(NametagSettings settings, double ownMillisPerTick) {
+        double mspt = 0.0D;
+        double tps = 20.0D;
+        if (serverHealthAvailable) {
+            try {
+                mspt = Bukkit.getAverageTickTime();
+                tps = Bukkit.getTPS()[0];
+            } catch (UnsupportedOperationException e) {
+                serverHealthAvailable = false;
+            }
+        }
+        // Updates that keep using their whole tick budget roll over and fall behind: the periods are too short.
+        // On Folia the budget is not enforced, there it caps the nametag time summed over all regions.
+        boolean saturated = ownMillisPerTick >= settings.tickBudgetMillis() * 0.9D;
+
+        if (mspt > settings.adaptiveMsptHigh() || saturated) {
+            stretch = Math.min(settings.adaptiveMaxStretch(), stretch * GROW);
+            calmSamples = 0;
+        } else if (mspt < settings.adaptiveMsptLow() && tps >= settings.adaptiveTpsLow()) {
+            // TPS is a one minute average, it only holds back the recovery, the MSPT decides when to stretch
+            if (++calmSamples >= CALM_SAMPLES) {
+                stretch = Math.max(1.0D, stretch * SHRINK);
+                calmSamples = 0;
+            }
+        } else {
+            calmSamples = 0;
+        }
+        // Never stretch beyond a lowered bound after a reload
+        stretch = Math.max(1.0D, Math.min(settings.adaptiveMaxStretch(), stretch));
+        return stretch;
+    }
+}
@@ -0,0 +1,49 @@
+package com.lyttledev.lyttlenametag.handlers;
+
+import com.github.retrooper.packetevents.event.PacketListenerAbstract;
+import com.github.retrooper.packetevents.event.PacketListenerPriority;
+import com.github.retrooper.packetevents.event.PacketSendEvent;
+import com.github.retrooper.packetevents.protocol.entity.type.EntityTypes;
+import com.github.retrooper.packetevents.protocol.packettype.PacketType;
+import com.github.retrooper.packetevents.wrapper.play.server.WrapperPlayServerDestroyEntities;
+import com.github.retrooper.packetevents.wrapper.play.server.WrapperPlayServerSpawnEntity;
+import org.bukkit.entity.Player;
+
+// Watches the spawn and destroy packets the server itself sends for player entities. Player#hidePlayer and
+// #showPlayer (vanish plugins) untrack and re-track the player, so these packets are where a hide or show becomes
+// visible to us without polling canSee for every pair. Runs on the netty threads, the handler only gets a hint.
+public class EntityTrackerListener extends PacketListenerAbstract {
+    private final Callback callback;
+
+    public EntityTrackerListener(Callback callback) {
+        super(PacketListenerPriority.MONITOR);
+        this.callback = callback;
+    }
+
+    @Override
+    public void onPacketSend(PacketSendEvent event) {
+        if (event.isCancelled()) return;
+        if (event.getPacketType() == PacketType.Play.Server.SPAWN_ENTITY) {
+            WrapperPlayServerSpawnEntity spawn = new WrapperPlayServerSpawnEntity(event);
+            if (spawn.getEntityType() != EntityTypes.PLAYER) return;
+            Player viewer = event.getPlayer();
+            if (viewer != null) onPlayerEntity(viewer, spawn.getEntityId(), true);
+        } else if (event.getPacketType() == PacketType.Play.Server.DESTROY_ENTITIES) {
+            Player viewer = event.getPlayer();
+            if (viewer == null) return;
+            for (int entityId : new WrapperPlayServerDestroyEntities(event).getEntityIds()) {
+                onPlayerEntity(viewer, entityId, false);
+            }
+        }
+    }
+
+    // Also the entry point for a simulated entity tracker (load test), which has no packets to listen to
+    public void onPlayerEntity(Player viewer, int entityId, boolean spawned) {
+        callback.onPlayerEntity(viewer, entityId, spawned);
+    }
+
+    public interface Callback {
+        // entityId may be any entity for destroys, the callback filters out non-players
+        void onPlayerEntity(Player viewer, int entityId, boolean spawned);
+    }
+}
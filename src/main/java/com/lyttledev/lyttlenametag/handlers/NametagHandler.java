@@ -1,81 +1,223 @@
 package com.lyttledev.lyttlenametag.handlers;
 
 import com.github.retrooper.packetevents.PacketEvents;
-import com.github.retrooper.packetevents.protocol.entity.data.EntityData;
-import com.github.retrooper.packetevents.protocol.entity.data.EntityDataTypes;
-import com.github.retrooper.packetevents.protocol.entity.type.EntityTypes;
 import com.github.retrooper.packetevents.protocol.world.Location;
-import com.github.retrooper.packetevents.util.Vector3d;
-import com.github.retrooper.packetevents.util.Vector3f;
-import com.github.retrooper.packetevents.wrapper.play.server.WrapperPlayServerDestroyEntities;
-import com.github.retrooper.packetevents.wrapper.play.server.WrapperPlayServerEntityMetadata;
+import com.github.retrooper.packetevents.wrapper.PacketWrapper;
 import com.github.retrooper.packetevents.wrapper.play.server.WrapperPlayServerSetPassengers;
-import com.github.retrooper.packetevents.wrapper.play.server.WrapperPlayServerSpawnEntity;
 import com.lyttledev.lyttlenametag.LyttleNametag;
-import com.lyttledev.lyttleutils.types.Message.Replacements;
+import com.lyttledev.lyttlenametag.types.EntityIdPool;
+import com.lyttledev.lyttlenametag.types.NametagMetrics;
+import com.lyttledev.lyttlenametag.types.NametagSettings;
+import com.lyttledev.lyttlenametag.types.PendingLines;
+import com.lyttledev.lyttlenametag.types.PlayerSlots;
+import com.lyttledev.lyttlenametag.types.VisibilityMatrix;
 import net.kyori.adventure.text.Component;
 import org.bukkit.Bukkit;
 import org.bukkit.World;
+import org.bukkit.configuration.file.YamlConfiguration;
 import org.bukkit.entity.Player;
 import org.bukkit.event.EventHandler;
+import org.bukkit.event.EventPriority;
 import org.bukkit.event.Listener;
 import org.bukkit.event.entity.EntityPotionEffectEvent;
-import org.bukkit.event.entity.PlayerDeathEvent;
 import org.bukkit.event.player.*;
 import org.bukkit.potion.PotionEffectType;
-import org.bukkit.scheduler.BukkitRunnable;
-import org.bukkit.scheduler.BukkitTask;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class NametagHandler implements Listener {
     private final LyttleNametag plugin;
     private final Map<UUID, NametagEntity> playerNametags = new ConcurrentHashMap<>();
-    private final AtomicInteger entityIdCounter = new AtomicInteger(Integer.MAX_VALUE / 2);
-    private BukkitTask timer;
-    private BukkitTask hardReloadTimer;
-    private BukkitTask visibilityTimer; // Fast, lightweight visibility enforcement (vanish/world) without flicker
-    private final Map<UUID, Map<UUID, Boolean>> viewerVisibility = new ConcurrentHashMap<>(); // viewer -> (owner -> visible)
+    private final EntityIdPool entityIdPool = new EntityIdPool(Integer.MAX_VALUE / 2 - 1); // line entity IDs, reused after quit
+    private PlatformScheduler.Task hardReloadTimer;
+    private PlatformScheduler.Task metricsTimer;
+    private PlatformScheduler.Task adaptiveTimer; // samples the server's health, null when the adaptive interval is off
+    private final AdaptiveInterval adaptiveInterval = new AdaptiveInterval();
+    private PlatformScheduler.Task packetTimer; // drains the per-viewer packet queues every tick
+    private final PlatformScheduler platform; // main thread on Paper, global region / entity schedulers on Folia
+    private final ShardedScheduler scheduler; // Per-tick, budgeted text updates and visibility enforcement
+    private final Map<Integer, UUID> ownersByEntityId = new ConcurrentHashMap<>(); // player entity ID -> player
+    private final Map<UUID, Set<UUID>> dirtyPairs = new ConcurrentHashMap<>(); // viewer -> owners to re-check
+    private PlatformScheduler.Task visibilityTask;
+    private final EntityTrackerListener trackerListener = new EntityTrackerListener(this::onPlayerEntityPacket);
+    private final PlayerSlots playerSlots = new PlayerSlots(); // online player -> dense slot index
+    private final VisibilityMatrix visibility = new VisibilityMatrix(); // viewer slot x owner slot -> last visible
+    private final VisibilityMatrix tracked = new VisibilityMatrix(); // viewer slot x owner slot -> owner entity spawned by the server
+    private final VisibilityMatrix farBacklog = new VisibilityMatrix(); // viewer slot x owner slot -> far viewer has lines held back
+    private final VisibilityMatrix farBacklogByOwner = new VisibilityMatrix(); // the same bits transposed: owner slot x viewer slot
     private final double nametagSpawnHeight = 1.8; // Height above player's head for nametag
+    private final long resyncDelay = 20L; // Debounce window for re-syncs after join/teleport/death/... (20 ticks = 1 second)
+    private final Set<UUID> dirtyOwners = ConcurrentHashMap.newKeySet(); // owners whose tag must be re-synced to all viewers
+    private final Set<UUID> dirtyViewers = ConcurrentHashMap.newKeySet(); // viewers that must be re-synced with all owners
+    private PlatformScheduler.Task resyncTask;
+    private final NametagRenderer renderer;
+    private final NametagPackets nametagPackets;
+    private final ExecutorService asyncExecutor = Executors.newVirtualThreadPerTaskExecutor(); // placeholder resolution
+    private volatile NametagSettings settings; // swapped as a whole on reload
+    private final NametagMetrics metrics = new NametagMetrics();
+    private volatile long[] emptyFingerprints = new long[0]; // shared, never modified once published
 
     public NametagHandler(LyttleNametag plugin) {
         this.plugin = plugin;
+        this.platform = new PlatformScheduler(plugin);
+        this.renderer = new NametagRenderer(metrics, nametagSpawnHeight);
+        // On Folia packets are written off the region threads
+        this.nametagPackets = new NametagPackets(plugin.getLogger(), metrics, PlatformScheduler.isFolia());
+        this.scheduler = new ShardedScheduler(platform, playerSlots, metrics);
+        applySettings(NametagSettings.load(plugin.config.general, plugin.getLogger()));
         plugin.getServer().getPluginManager().registerEvents(this, plugin);
+        // Hide/show (vanish) shows up as the server untracking or re-tracking the player entity
+        PacketEvents.getAPI().getEventManager().registerListener(trackerListener);
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            playerSlots.slotOf(player.getUniqueId());
+            ownersByEntityId.put(player.getEntityId(), player.getUniqueId());
+        }
+        seedTrackedPairs();
         startTimer();
         startHardReloadTimer();
-        startVisibilityTimer();
+        startMetricsTimer();
+        startAdaptiveTimer();
+        this.packetTimer = platform.runTimer(() -> nametagPackets.drain(platform.currentTick()), 1L, 1L);
     }
 
+    // Hot reload: swap in the new config and push only what changed to the live nametags, without respawning them
     public void reload() {
-        startTimer();
-        reloadNametags();
-        startHardReloadTimer();
-        startVisibilityTimer();
+        NametagSettings previous = settings;
+        NametagSettings current = NametagSettings.load(plugin.config.general, plugin.getLogger());
+        applySettings(current);
+        for (Player owner : Bukkit.getOnlinePlayers()) {
+            platform.executeForPlayer(owner, () -> reapplyNametag(owner, previous, current));
+        }
     }
 
-    private void startTimer() {
-        if (timer != null) {
-            timer.cancel();
+    public NametagMetrics getMetrics() {
+        return metrics;
+    }
+
+    // Ticks between two runs of the update job (after the adaptive stretch), used to express per-second rates per update cycle
+    public int getUpdatePeriod() {
+        return (int) Math.max(1L, Math.round(renderer.getBasePeriod() * adaptiveInterval.getStretch()));
+    }
+
+    // Compile the configured template once, so ticks only evaluate its dynamic segments.
+    // Every nametag resets its render cache on its next render, on its owner's thread.
+    private void applySettings(NametagSettings settings) {
+        this.settings = settings;
+        renderer.compile(settings);
+        nametagPackets.setViewerBudget(settings.viewerPacketBudget());
+        // Owners are sharded across the shortest refresh tier, restart the scheduler if it is already running,
+        // and turn the adaptive interval on or off
+        if (scheduler.isRunning()) {
+            startTimer();
+            startAdaptiveTimer();
         }
+        // Pick up a changed dump interval as well
+        if (metricsTimer != null) {
+            startMetricsTimer();
+        }
+    }
 
-        double interval = (double) plugin.config.general.get("interval");
+    // Bring one live nametag to the reloaded config, on the owner's thread. Lines of the same count get a
+    // metadata update if their text changed, added lines are spawned on top and removed lines destroyed.
+    private void reapplyNametag(Player owner, NametagSettings previous, NametagSettings current) {
+        NametagEntity entity = playerNametags.get(owner.getUniqueId());
+        if (entity == null) {
+            spawnNametag(owner);
+            return;
+        }
+        if (entity.isSingleEntity() != current.singleEntity()) {
+            // Switching between one entity per line and a single entity needs other entities, for this tag only
+            removeNametag(owner);
+            spawnNametag(owner);
+            return;
+        }
+        int[] oldIds = entity.getEntityIds();
+        int lineCount = renderer.getLineCount();
+        List<Player> viewers = new ArrayList<>();
+        for (Player viewer : Bukkit.getOnlinePlayers()) {
+            if (!viewer.equals(owner) && getLastVisibility(viewer, owner)) viewers.add(viewer);
+        }
 
-        // Periodic cleanup and update
-        this.timer = new BukkitRunnable() {
-            @Override
-            public void run() {
-                cleanupOrphans();
-                // Enforce viewer visibility each cycle to catch vanish changes even if lines didn't change
-                enforceVisibilityMatrix();
-                updateNametagTexts();
+        if (entity.isSingleEntity()) {
+            if (lineCount != entity.getLineCount()) {
+                // Still one entity, forget the applied lines so the render below sends the whole joined text
+                entity.setLines(normalizeToSize(entity.getLines(), lineCount));
+                entity.setAppliedFingerprints(new long[0]);
             }
-        }.runTaskTimer(plugin, 0, Math.round(interval * 20));
+        } else if (lineCount < oldIds.length) {
+            // The top lines are gone, the remaining chain stays in place
+            int[] removed = Arrays.copyOfRange(oldIds, lineCount, oldIds.length);
+            entity.setEntityIds(Arrays.copyOf(oldIds, lineCount));
+            entity.setAppliedFingerprints(Arrays.copyOf(entity.getAppliedFingerprints(), lineCount));
+            entity.setLines(normalizeToSize(entity.getLines(), lineCount));
+            for (Player viewer : viewers) {
+                sendDestroyToViewer(viewer, removed);
+            }
+            entityIdPool.release(removed);
+        } else if (lineCount > oldIds.length) {
+            // New lines are spawned empty on top of the chain, the render below sends their text
+            int[] added = entityIdPool.acquire(lineCount - oldIds.length);
+            int[] ids = Arrays.copyOf(oldIds, lineCount);
+            System.arraycopy(added, 0, ids, oldIds.length, added.length);
+            long[] applied = Arrays.copyOf(entity.getAppliedFingerprints(), lineCount);
+            Arrays.fill(applied, oldIds.length, lineCount, NametagRenderer.EMPTY_FINGERPRINT);
+            entity.setEntityIds(ids);
+            entity.setAppliedFingerprints(applied);
+            entity.setLines(normalizeToSize(entity.getLines(), lineCount));
+
+            int parentId = oldIds.length > 0 ? oldIds[oldIds.length - 1] : owner.getEntityId();
+            List<PacketWrapper<?>> packets = nametagPackets.spawnPackets(parentId, oldIds.length, added,
+                    emptyLines(added.length), spawnLocation(ownerState(owner, entity)), current.viewRange(), current.lineSpacing());
+            for (Player viewer : viewers) {
+                nametagPackets.sendBundle(viewer, packets);
+            }
+        }
+
+        if (previous.layoutDiffers(current)) {
+            // Line spacing and view range of the lines that were already there, bundled so a queued text update
+            // of the same line can't replace it
+            int[] ids = entity.getEntityIds();
+            int lineWidth = entity.isSingleEntity() ? current.lineWidth() : 0;
+            List<PacketWrapper<?>> packets = new ArrayList<>();
+            for (int i = 0; i < Math.min(oldIds.length, ids.length); i++) {
+                packets.add(nametagPackets.layoutMetadata(ids[i], i, current.viewRange(), current.lineSpacing(), lineWidth));
+            }
+            for (Player viewer : viewers) {
+                nametagPackets.sendBundle(viewer, packets);
+            }
+        }
+
+        // Re-render with the new template, only lines whose text changed are sent
+        updateOwnerVisibilityNametag(owner);
+    }
+
+    private void startTimer() {
+        // Spread owners over the ticks of each period, and cap the time spent per tick
+        double budgetMillis = settings.tickBudgetMillis();
+
+        scheduler.clearJobs();
+        // Text updates, placeholders are only re-resolved when their own tier is due
+        scheduler.addJob(NametagMetrics.Timer.UPDATE, renderer.getBasePeriod(),
+                owner -> updateNametagText(owner, platform.currentTick()));
+        // Low-frequency sweep per viewer row, a safety net for visibility changes no event or packet revealed
+        scheduler.addJob(NametagMetrics.Timer.VISIBILITY, settings.visibilityPeriod(), this::enforceViewerVisibility);
+        scheduler.start(budgetMillis);
     }
 
     private void startHardReloadTimer() {
@@ -83,98 +225,144 @@ public class NametagHandler implements Listener {
             hardReloadTimer.cancel();
         }
         // Soft refresh every 60 seconds (1 minute) without destroying/spawning to avoid flicker
-        this.hardReloadTimer = new BukkitRunnable() {
-            @Override
-            public void run() {
-                softRefreshNametags();
-            }
-        }.runTaskTimer(plugin, 0, 20 * 60); // 20 ticks per second * 60 seconds
+        this.hardReloadTimer = platform.runTimer(this::softRefreshNametags, 1L, 20 * 60); // 20 ticks per second * 60 seconds
+    }
+
+    private void startAdaptiveTimer() {
+        if (adaptiveTimer != null) {
+            adaptiveTimer.cancel();
+            adaptiveTimer = null;
+        }
+        scheduler.takeSpentNanos();
+        if (!settings.adaptiveInterval()) {
+            // Back to the configured periods
+            adaptiveInterval.reset();
+            applyStretch(1.0D);
+            return;
+        }
+        // Once per second: stretch the refresh periods and the visibility sweep under load, tighten them with headroom
+        this.adaptiveTimer = platform.runTimer(() -> {
+            double ownMillisPerTick = scheduler.takeSpentNanos() / 1_000_000D / 20;
+            applyStretch(adaptiveInterval.sample(settings, ownMillisPerTick));
+        }, 20L, 20L);
+    }
+
+    private void applyStretch(double stretch) {
+        scheduler.setStretch(stretch);
+        renderer.setStretch(stretch);
+    }
+
+    // Factor the refresh periods are currently stretched by (1 = as configured)
+    public double getAdaptiveStretch() {
+        return adaptiveInterval.getStretch();
     }
 
-    // Fast visibility enforcement loop (every 5 ticks) to react quickly to vanish/unvanish and cross-world moves
-    private void startVisibilityTimer() {
-        if (visibilityTimer != null) {
-            visibilityTimer.cancel();
+    private void startMetricsTimer() {
+        if (metricsTimer != null) {
+            metricsTimer.cancel();
         }
-        this.visibilityTimer = new BukkitRunnable() {
+        // Seconds between two metrics dumps, 0 disables the dump file
+        int dumpInterval = settings.metricsDumpInterval();
+
+        // Sample the per-second rates every second, and dump them every dumpInterval samples
+        this.metricsTimer = platform.runTimer(new Runnable() {
+            private int seconds;
+
             @Override
             public void run() {
-                enforceVisibilityMatrix();
+                metrics.sampleRates();
+                if (dumpInterval > 0 && ++seconds >= dumpInterval) {
+                    seconds = 0;
+                    dumpMetrics();
+                }
             }
-        }.runTaskTimer(plugin, 0L, 5L); // ~0.25s
+        }, 20L, 20L);
+    }
+
+    // Render the text on the timer's thread, write the file off it
+    private void dumpMetrics() {
+        String text = metrics.toPrometheus();
+        File file = new File(plugin.getDataFolder(), "metrics.prom");
+        platform.runAsync(() -> {
+            try {
+                Files.writeString(file.toPath(), text, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                plugin.getLogger().warning("Error writing metrics dump: " + e.getMessage());
+            }
+        });
     }
 
     @EventHandler
     public void onPlayerJoin(PlayerJoinEvent event) {
-        Bukkit.getScheduler().runTaskLater(plugin, () -> {
+        // Slots are only handed out here, every other path looks them up and skips players that already quit
+        playerSlots.slotOf(event.getPlayer().getUniqueId());
+        ownersByEntityId.put(event.getPlayer().getEntityId(), event.getPlayer().getUniqueId());
+        platform.runForPlayerLater(event.getPlayer(), () -> {
+            // Shows the joining player's tag to every viewer that tracks them
             spawnNametag(event.getPlayer());
             for (Player onlinePlayer : Bukkit.getOnlinePlayers()) {
                 if (onlinePlayer.equals(event.getPlayer())) continue;
-                // Only show nametags of players in the same world as the joining player and that the viewer can see
-                if (!sameWorld(onlinePlayer, event.getPlayer()) || !event.getPlayer().canSee(onlinePlayer)) {
-                    NametagEntity e = playerNametags.get(onlinePlayer.getUniqueId());
-                    if (e != null) {
-                        sendDestroyToViewer(event.getPlayer(), e.getEntityIds());
-                    }
-                    // Update cache as hidden
-                    setLastVisibility(event.getPlayer(), onlinePlayer, false);
-                    continue;
-                }
-                showNametagToPlayer(onlinePlayer, event.getPlayer());
-                // Update cache as visible
-                setLastVisibility(event.getPlayer(), onlinePlayer, true);
+                // Only show nametags of players the joining player's client tracks and can see.
+                // Pairs the tracker listener already showed are not sent again.
+                enforcePair(event.getPlayer(), onlinePlayer);
             }
         }, 10L);
-        // Hard reload on join
-        reloadTimeOut();
     }
 
     @EventHandler
     public void onPlayerQuit(PlayerQuitEvent event) {
+        ownersByEntityId.remove(event.getPlayer().getEntityId());
+        dirtyPairs.remove(event.getPlayer().getUniqueId());
         // Clear this player as a viewer from the visibility cache
         clearViewerFromVisibilityCache(event.getPlayer().getUniqueId());
+        forgetRelationViewer(event.getPlayer().getUniqueId());
+        renderer.forgetPlayer(event.getPlayer().getUniqueId());
+        nametagPackets.forgetViewer(event.getPlayer().getUniqueId());
         removeNametag(event.getPlayer());
-        // Hard reload on quit
-        reloadTimeOut();
-    }
-
-    @EventHandler
-    public void onPlayerDeath(PlayerDeathEvent event) {
-        // Hard reload on death (after death event to ensure state is correct)
-        reloadTimeOut();
+        releaseSlot(event.getPlayer().getUniqueId());
+        // Nothing left to re-sync for this player, the destroy above already reached every viewer
+        dirtyOwners.remove(event.getPlayer().getUniqueId());
+        dirtyViewers.remove(event.getPlayer().getUniqueId());
     }
 
     @EventHandler
     public void onPlayerRespawn(PlayerRespawnEvent event) {
-        // Hard reload on respawn (after respawn so location is correct)
-        reloadTimeOut();
+        invalidateOwnerInputs(event.getPlayer());
+        // The respawned entity is spawned for every viewer (and every owner for the respawned client) by the server,
+        // the tracker listener re-shows the tags of exactly those pairs
+        ownersByEntityId.put(event.getPlayer().getEntityId(), event.getPlayer().getUniqueId());
     }
 
     @EventHandler
     public void onPlayerChangedWorld(PlayerChangedWorldEvent event) {
-        // Hard reload on world change
-        reloadTimeOut();
+        // The server untracks and re-tracks the player in both directions, the tracker listener follows those pairs
+        invalidateOwnerInputs(event.getPlayer());
     }
 
     @EventHandler
     public void onPlayerTeleport(PlayerTeleportEvent event) {
-        // Hard reload on teleport (after teleport)
-        reloadTimeOut();
+        // A long teleport re-tracks the player in both directions (tracker listener), a short one moves the passengers along
+        invalidateOwnerInputs(event.getPlayer());
+        flushEnteredBands(event.getPlayer(), event.getTo());
     }
 
     @EventHandler
     public void onPlayerGameModeChange(PlayerGameModeChangeEvent event) {
-        // Hard reload on game mode change (after change)
-        reloadTimeOut();
+        // Re-sync on game mode change (after change), only the player's own tag is affected
+        scheduleResync(event.getPlayer(), true, false);
     }
 
     // Instant, no-delay update on toggle sneak to avoid flicker and slowness
     @EventHandler
     public void onPlayerToggleSneak(PlayerToggleSneakEvent event) {
+        // The event fires before the change, keep the new state for isGloballyHidden
+        NametagEntity entity = playerNametags.get(event.getPlayer().getUniqueId());
+        if (entity != null) {
+            entity.setSneaking(event.isSneaking());
+            entity.markStateDirty();
+        }
         // Update nametag in-place (metadata only), do NOT trigger reload/destroy/spawn
         updateOwnerVisibilityNametag(event.getPlayer());
-        // Also enforce visibility immediately (in case vanish plugins interact with sneak)
-        enforceVisibilityMatrix();
     }
 
     // Instant update when invisibility potion is applied/removed
@@ -183,50 +371,227 @@ public class NametagHandler implements Listener {
         if (!(event.getEntity() instanceof Player)) return;
         if (event.getModifiedType() != PotionEffectType.INVISIBILITY) return;
         Player player = (Player) event.getEntity();
-        Bukkit.getScheduler().runTask(plugin, () -> {
+        platform.runForPlayer(player, () -> {
+            // Applied by now, read it once instead of on every update
+            NametagEntity entity = playerNametags.get(player.getUniqueId());
+            if (entity != null) refreshHiddenInputs(player, entity);
             updateOwnerVisibilityNametag(player);
-            enforceVisibilityMatrix();
         });
     }
 
-    private void reloadTimeOut() {
-        // Run the reloadNametags method after a delay
-        Bukkit.getScheduler().runTaskLater(plugin, this::reloadNametags, 20L); // 20 ticks = 1 second
+    // A new block position invalidates the position tokens and the captured owner state (level of detail, Folia)
+    @EventHandler(priority = EventPriority.MONITOR, ignoreCancelled = true)
+    public void onPlayerMove(PlayerMoveEvent event) {
+        if (!event.hasChangedBlock()) return;
+        invalidateOwnerInputs(event.getPlayer());
+        flushEnteredBands(event.getPlayer(), event.getTo());
     }
 
-    private void spawnNametag(Player player) {
-        removeNametag(player);
+    // A far viewer only receives the name line, the rest of its backlog goes out once the pair is within the mid band
+    // again: checked when either of them moves, for the mover as viewer (its row) and as owner (its column)
+    private void flushEnteredBands(Player mover, org.bukkit.Location to) {
+        NametagSettings settings = this.settings;
+        if (!settings.lodEnabled()) return;
+        int moverSlot = playerSlots.find(mover.getUniqueId());
+        if (moverSlot < 0) return;
+
+        for (int ownerSlot : farBacklog.ownersOf(moverSlot)) {
+            UUID ownerId = playerSlots.playerAt(ownerSlot);
+            Player owner = ownerId != null ? Bukkit.getPlayer(ownerId) : null;
+            NametagEntity entity = ownerId != null ? playerNametags.get(ownerId) : null;
+            NametagEntity.OwnerState state = entity != null ? entity.getOwnerState() : null;
+            if (owner == null || state == null || !withinMidBand(to, state.location(), settings)) continue;
+            setFarBacklog(moverSlot, ownerSlot, false);
+            platform.executeForPlayer(owner, () -> sendNametagTextUpdate(owner, entity, 0L, false));
+        }
+
+        NametagEntity entity = playerNametags.get(mover.getUniqueId());
+        if (entity == null) return;
+        boolean entered = false;
+        // The mover's row of the transposed backlog holds its far viewers. Their positions are the ones captured on
+        // their own threads, a live read of a player in another region is not safe on Folia.
+        for (int viewerSlot : farBacklogByOwner.ownersOf(moverSlot)) {
+            UUID viewerId = playerSlots.playerAt(viewerSlot);
+            NametagEntity viewerEntity = viewerId != null ? playerNametags.get(viewerId) : null;
+            NametagEntity.OwnerState viewerState = viewerEntity != null ? viewerEntity.getOwnerState() : null;
+            if (viewerState == null || !withinMidBand(viewerState.location(), to, settings)) continue;
+            setFarBacklog(viewerSlot, moverSlot, false);
+            entered = true;
+        }
+        if (entered) {
+            sendNametagTextUpdate(mover, entity, 0L, false);
+        }
+    }
 
-        org.bukkit.Location baseLoc = player.getLocation().clone();
-        baseLoc.setY(baseLoc.getY() + nametagSpawnHeight);
-        World world = baseLoc.getWorld();
+    private void setFarBacklog(int viewerSlot, int ownerSlot, boolean held) {
+        farBacklog.set(viewerSlot, ownerSlot, held);
+        farBacklogByOwner.set(ownerSlot, viewerSlot, held);
+    }
 
-        Replacements replacements = Replacements.builder()
-                .add("<PLAYER>", player.getName())
-                .add("<DISPLAYNAME>", player.displayName() != null ? player.displayName().toString() : player.getName())
-                .add("<WORLD>", world.getName())
-                .add("<X>", String.valueOf(baseLoc.getBlockX()))
-                .add("<Y>", String.valueOf(baseLoc.getBlockY()))
-                .add("<Z>", String.valueOf(baseLoc.getBlockZ()))
-                .build();
+    private boolean withinMidBand(org.bukkit.Location viewer, org.bukkit.Location owner, NametagSettings settings) {
+        return viewer.getWorld() == owner.getWorld() && viewer.distanceSquared(owner) <= settings.lodMidSquared();
+    }
 
-        // Render the nametag template into separate lines and chain them bottom-up (each line rides the previous one).
-        // NOTE: We always allocate the full template line count to avoid re-spawn flicker on visibility toggles.
-        String nametagTemplate = (String) plugin.config.general.get("nametag");
-        List<Component> linesBottomUp = renderLinesBottomUp(nametagTemplate, replacements, player);
+    // Teleports, world changes and respawns change the position and world tokens as well
+    private void invalidateOwnerInputs(Player owner) {
+        NametagEntity entity = playerNametags.get(owner.getUniqueId());
+        if (entity == null) return;
+        if (renderer.usesPositionTokens()) {
+            entity.invalidateTokens();
+        }
+        entity.markStateDirty();
+    }
 
-        // Create entity IDs for each line (one Text Display per line)
-        List<Integer> entityIds = new ArrayList<>(linesBottomUp.size());
-        for (int i = 0; i < linesBottomUp.size(); i++) {
-            entityIds.add(entityIdCounter.decrementAndGet());
+    // Netty thread: the server spawned or destroyed a player entity for this viewer, because the owner entered or left
+    // the viewer's tracking range or through hidePlayer/showPlayer. The tag follows the owner's entity, only that pair
+    // is re-checked (on the next tick, when the owner's spawn reached the client and canSee reflects the change).
+    private void onPlayerEntityPacket(Player viewer, int entityId, boolean spawned) {
+        UUID ownerId = ownersByEntityId.get(entityId);
+        if (ownerId == null || ownerId.equals(viewer.getUniqueId())) return;
+        int viewerSlot = playerSlots.find(viewer.getUniqueId());
+        int ownerSlot = playerSlots.find(ownerId);
+        // A packet still in flight for a player whose quit released the slot
+        if (viewerSlot < 0 || ownerSlot < 0) return;
+        tracked.set(viewerSlot, ownerSlot, spawned);
+        if (!playerNametags.containsKey(ownerId)) return;
+        if (spawned) {
+            // A freshly spawned owner entity carries no passengers, the lines must be spawned onto it again
+            visibility.set(viewerSlot, ownerSlot, false);
         }
+        scheduleVisibilityCheck(viewer.getUniqueId(), ownerId);
+    }
 
-        NametagEntity nametagEntity = new NametagEntity(
-                entityIds,
-                linesBottomUp
-        );
+    private synchronized void scheduleVisibilityCheck(UUID viewerId, UUID ownerId) {
+        dirtyPairs.computeIfAbsent(viewerId, id -> ConcurrentHashMap.newKeySet()).add(ownerId);
+        if (visibilityTask == null) {
+            this.visibilityTask = platform.runLater(this::flushVisibilityChecks, 1L);
+        }
+    }
 
-        playerNametags.put(player.getUniqueId(), nametagEntity);
+    // Re-check the marked pairs on the viewer's thread, like the viewer's row in the sweep
+    private void flushVisibilityChecks() {
+        Map<UUID, Set<UUID>> pairs;
+        synchronized (this) {
+            this.visibilityTask = null;
+            pairs = new HashMap<>(dirtyPairs);
+            dirtyPairs.keySet().removeAll(pairs.keySet());
+        }
+        for (Map.Entry<UUID, Set<UUID>> entry : pairs.entrySet()) {
+            Player viewer = Bukkit.getPlayer(entry.getKey());
+            if (viewer == null || !viewer.isOnline()) continue;
+            platform.executeForPlayer(viewer, () -> {
+                for (UUID ownerId : entry.getValue()) {
+                    Player owner = Bukkit.getPlayer(ownerId);
+                    if (owner != null && owner.isOnline()) enforcePair(viewer, owner);
+                }
+            });
+        }
+    }
+
+    // Spawn or destroy the owner's tag for this viewer if its visibility changed
+    private void enforcePair(Player viewer, Player owner) {
+        if (!playerNametags.containsKey(owner.getUniqueId())) return;
+        boolean visible = !shouldHideForViewer(owner, viewer);
+        if (visible == getLastVisibility(viewer, owner)) return;
+        if (visible) {
+            showNametagToPlayer(owner, viewer);
+        } else {
+            NametagEntity entity = playerNametags.get(owner.getUniqueId());
+            if (entity != null) sendDestroyToViewer(viewer, entity.getEntityIds());
+            setLastVisibility(viewer, owner, false);
+        }
+    }
+
+    // Mark a player for re-sync; every trigger within the debounce window is merged into a single pass
+    // Synchronized since events fire on different region threads on Folia
+    private synchronized void scheduleResync(Player player, boolean asOwner, boolean asViewer) {
+        if (asOwner) dirtyOwners.add(player.getUniqueId());
+        if (asViewer) dirtyViewers.add(player.getUniqueId());
+        if (resyncTask == null) {
+            this.resyncTask = platform.runLater(this::flushResync, resyncDelay);
+        }
+    }
+
+    // Re-sync only the owner/viewer pairs that involve a dirty player, instead of respawning every tag for everyone
+    private void flushResync() {
+        Set<UUID> owners;
+        Set<UUID> viewers;
+        synchronized (this) {
+            this.resyncTask = null;
+            owners = new HashSet<>(dirtyOwners);
+            viewers = new HashSet<>(dirtyViewers);
+            dirtyOwners.removeAll(owners);
+            dirtyViewers.removeAll(viewers);
+        }
+
+        for (UUID ownerId : owners) {
+            Player owner = Bukkit.getPlayer(ownerId);
+            if (owner == null || !owner.isOnline()) continue;
+            // The owner's state is read and rendered on the owner's thread
+            platform.executeForPlayer(owner, () -> {
+                NametagEntity entity = playerNametags.get(ownerId);
+                if (entity == null) {
+                    // Spawning already shows the tag to every eligible viewer
+                    spawnNametag(owner);
+                    return;
+                }
+                // Refresh the owner's own text state (e.g. health after respawn), metadata only
+                refreshHiddenInputs(owner, entity);
+                updateOwnerVisibilityNametag(owner);
+                for (Player viewer : Bukkit.getOnlinePlayers()) {
+                    if (viewer.equals(owner)) continue;
+                    resyncPair(owner, viewer, entity);
+                }
+            });
+        }
+
+        for (UUID viewerId : viewers) {
+            Player viewer = Bukkit.getPlayer(viewerId);
+            if (viewer == null || !viewer.isOnline()) continue;
+            for (Player owner : Bukkit.getOnlinePlayers()) {
+                // Pairs of dirty owners were handled above
+                if (owner.equals(viewer) || owners.contains(owner.getUniqueId())) continue;
+                NametagEntity entity = playerNametags.get(owner.getUniqueId());
+                if (entity == null) continue;
+                platform.executeForPlayer(owner, () -> resyncPair(owner, viewer, entity));
+            }
+        }
+    }
+
+    // Only pairs whose visibility flipped get packets. A re-tracked owner entity already cleared the pair's
+    // visibility bit (tracker listener), so a tag the client dropped with the entity counts as a flip.
+    private void resyncPair(Player owner, Player viewer, NametagEntity entity) {
+        boolean visible = !shouldHideForViewer(owner, viewer);
+        if (visible == getLastVisibility(viewer, owner)) return;
+        if (visible) {
+            showNametagToPlayer(owner, viewer);
+        } else {
+            sendDestroyToViewer(viewer, entity.getEntityIds());
+            setLastVisibility(viewer, owner, false);
+        }
+    }
+
+    private void spawnNametag(Player player) {
+        // A player keeps the same line entities (IDs and UUIDs) for the whole session, spawning again reuses them
+        NametagEntity nametagEntity = playerNametags.get(player.getUniqueId());
+        if (nametagEntity == null) {
+            // Create entity IDs for each line (one Text Display per line), or a single one for the whole tag
+            // NOTE: We always allocate the full template line count to avoid re-spawn flicker on visibility toggles.
+            boolean singleEntity = settings.singleEntity();
+            nametagEntity = new NametagEntity(
+                    entityIdPool.acquire(singleEntity ? 1 : renderer.getLineCount()),
+                    Collections.emptyList(),
+                    singleEntity
+            );
+            playerNametags.put(player.getUniqueId(), nametagEntity);
+        }
+        refreshHiddenInputs(player, nametagEntity);
+        // Render the nametag template into separate lines and chain them bottom-up (each line rides the previous one).
+        List<Component> rendered = renderer.renderLinesBottomUp(player, nametagEntity, platform.currentTick());
+        int lineCount = nametagEntity.isSingleEntity() ? renderer.getLineCount() : nametagEntity.getEntityIds().length;
+        nametagEntity.setLines(normalizeToSize(rendered, lineCount));
+        nametagEntity.setAppliedFingerprints(renderedFingerprints(nametagEntity));
+        captureOwnerState(player, nametagEntity);
 
         for (Player viewer : Bukkit.getOnlinePlayers()) {
             if (!viewer.equals(player)) {
@@ -234,8 +599,8 @@ public class NametagHandler implements Listener {
                 if (!shouldHideForViewer(player, viewer)) {
                     showNametagToPlayer(player, viewer);
                     setLastVisibility(viewer, player, true);
-                } else {
-                    // Ensure it's hidden for non-eligible viewers
+                } else if (getLastVisibility(viewer, player)) {
+                    // Ensure it's hidden for non-eligible viewers that still have it
                     sendDestroyToViewer(viewer, nametagEntity.getEntityIds());
                     setLastVisibility(viewer, player, false);
                 }
@@ -248,20 +613,6 @@ public class NametagHandler implements Listener {
         }
     }
 
-    private List<Component> renderLinesBottomUp(String nametagTemplate, Replacements replacements, Player player) {
-        // Split by newline, preserve trailing empty lines, then render each line separately
-        String[] rawLines = nametagTemplate.split("\\R", -1);
-        List<Component> topDown = new ArrayList<>(rawLines.length);
-        for (String rawLine : rawLines) {
-            Component lineComponent = plugin.message.getMessageRaw(rawLine, replacements, player);
-            topDown.add(lineComponent);
-        }
-        // Reverse to bottom-up so the last (often empty) line becomes the bottom-most rider
-        List<Component> bottomUp = new ArrayList<>(topDown);
-        Collections.reverse(bottomUp);
-        return bottomUp;
-    }
-
     private void showNametagToPlayer(Player owner, Player viewer) {
         NametagEntity entity = playerNametags.get(owner.getUniqueId());
         if (entity == null) return;
@@ -273,88 +624,46 @@ public class NametagHandler implements Listener {
             return;
         }
 
+        // One of them quit on another thread since, its slot is released
+        int viewerSlot = playerSlots.find(viewer.getUniqueId());
+        int ownerSlot = playerSlots.find(owner.getUniqueId());
+        if (viewerSlot < 0 || ownerSlot < 0) return;
+
         int ownerId = owner.getEntityId();
+        NametagEntity.OwnerState state = ownerState(owner, entity);
 
         try {
-            org.bukkit.Location bukkit_location = owner.getLocation().clone();
-            bukkit_location.setY(bukkit_location.getY() + nametagSpawnHeight);
-
-            Location packetevents_location = new Location(
-                    bukkit_location.getX(),
-                    bukkit_location.getY(),
-                    bukkit_location.getZ(),
-                    bukkit_location.getYaw(),
-                    bukkit_location.getPitch()
+            NametagSettings settings = this.settings;
+
+            // If owner is globally hidden, ensure we send empty text to this viewer too
+            List<Component> linesBottomUp = state.globallyHidden()
+                    ? emptyLines(entity.getLineCount())
+                    : renderer.linesForViewer(owner, entity, viewer, entity.getLines(), platform.currentTick());
+
+            // Spawn, metadata and passengers go out as one bundle, so the client applies the whole tag at once
+            List<PacketWrapper<?>> packets = entity.isSingleEntity()
+                    ? nametagPackets.singleSpawnPackets(
+                    ownerId,
+                    entity.getEntityIds()[0],
+                    NametagRenderer.joinLines(linesBottomUp),
+                    spawnLocation(state),
+                    settings.viewRange(),
+                    settings.lineSpacing(),
+                    settings.lineWidth()
+            )
+                    : nametagPackets.spawnPackets(
+                    ownerId,
+                    entity.getEntityIds(),
+                    linesBottomUp,
+                    spawnLocation(state),
+                    settings.viewRange(),
+                    settings.lineSpacing()
             );
-
-            float defaultViewDistance = 1.0f; // default (1 unit) equals 64 blocks
-            // Tested: Default is 80 for our metadata.
-            // Default Minecraft client nametag distance is 64 blocks.
-            float blocksPerDefault = 80.0f;
-            float oneBlockViewDistance = defaultViewDistance / blocksPerDefault;
-
-            int blocksConfig = (int) plugin.config.general.get("view_distance");
-            int blocks = blocksConfig > 0 ? blocksConfig : 64; // Default to 64 blocks if not set
-
-            // Configurable line spacing in blocks (world units). Default ~0.275 blocks.
-            Object lineSpacingObj = plugin.config.general.get("line_spacing");
-            double lineSpacing = (lineSpacingObj instanceof Number) ? ((Number) lineSpacingObj).doubleValue() : 0.275D;
-
-            // Create the spawn packet for each text display entity (one per line), bottom-up
-            List<Integer> lineEntityIds = entity.getEntityIds();
-            List<Component> linesBottomUp = entity.getLines(); // bottom-up order
-
-            for (int i = 0; i < lineEntityIds.size(); i++) {
-                int lineEntityId = lineEntityIds.get(i);
-
-                WrapperPlayServerSpawnEntity spawnPacket = new WrapperPlayServerSpawnEntity(
-                        lineEntityId,
-                        UUID.randomUUID(),
-                        EntityTypes.TEXT_DISPLAY,
-                        packetevents_location,
-                        0f, // yaw
-                        0,  // data
-                        new Vector3d(0, 0, 0) // velocity
-                );
-
-                // Add metadata to the Text Display, see protocol info here: https://minecraft.wiki/w/Java_Edition_protocol/Entity_metadata#Text_Display
-                List<EntityData<?>> metadata = new ArrayList<>();
-
-                // Display entity flags: enable transformations + centered billboard so it faces viewers
-                metadata.add(new EntityData<>(15, EntityDataTypes.BYTE, (byte) 0x03));
-
-                // View distance
-                metadata.add(new EntityData<>(17, EntityDataTypes.FLOAT, oneBlockViewDistance * blocks));
-
-                // Apply per-line vertical translation so lines have spacing while riding each other.
-                // Translation is in world units (blocks). Bottom line = 0, next = spacing, etc.
-                float yOffset = (float) ((i + 1) * lineSpacing);
-                metadata.add(new EntityData<>(11, EntityDataTypes.VECTOR3F, new Vector3f(0f, yOffset, 0f)));
-
-                // Set the text content of this line (each line is its own display)
-                Component lineText = linesBottomUp.get(i);
-                // If owner is globally hidden, ensure we send empty text to this viewer too
-                if (isGloballyHidden(owner)) {
-                    lineText = Component.text("");
-                }
-                metadata.add(new EntityData<>(23, EntityDataTypes.ADV_COMPONENT, lineText));
-
-                // Set background color to fully transparent (optional)
-                // metadata.add(new EntityData<>(25, EntityDataTypes.INT, 0));
-
-                WrapperPlayServerEntityMetadata metadataPacket = new WrapperPlayServerEntityMetadata(lineEntityId, metadata);
-
-                PacketEvents.getAPI().getPlayerManager().sendPacket(viewer, spawnPacket);
-                PacketEvents.getAPI().getPlayerManager().sendPacket(viewer, metadataPacket);
-            }
-
-            // Chain passengers: start from the owner, then each line rides the previous one (bottom-up)
-            int parentId = ownerId;
-            for (int lineEntityId : lineEntityIds) {
-                WrapperPlayServerSetPassengers passengersPacket = new WrapperPlayServerSetPassengers(parentId, new int[]{lineEntityId});
-                PacketEvents.getAPI().getPlayerManager().sendPacket(viewer, passengersPacket);
-                parentId = lineEntityId; // next line rides this line
-            }
+            nametagPackets.sendBundle(viewer, packets);
+            metrics.increment(NametagMetrics.Counter.SPAWNS);
+            // The spawn carries every current line, nothing is held back for this viewer anymore
+            entity.getPendingLines().reset(viewerSlot, platform.currentTick());
+            setFarBacklog(viewerSlot, ownerSlot, false);
 
             // Mark as visible for this viewer-owner pair
             setLastVisibility(viewer, owner, true);
@@ -363,54 +672,132 @@ public class NametagHandler implements Listener {
         }
     }
 
-    private void updateNametagTexts() {
-        for (Player player : Bukkit.getOnlinePlayers()) {
-            NametagEntity entity = playerNametags.get(player.getUniqueId());
-            if (entity == null) continue;
-
-            org.bukkit.Location baseLoc = player.getLocation().clone();
-            baseLoc.setY(baseLoc.getY() + nametagSpawnHeight);
-            World world = baseLoc.getWorld();
-
-            Replacements replacements = Replacements.builder()
-                    .add("<PLAYER>", player.getName())
-                    .add("<DISPLAYNAME>", player.displayName() != null ? player.displayName().toString() : player.getName())
-                    .add("<WORLD>", world.getName())
-                    .add("<X>", String.valueOf(baseLoc.getBlockX()))
-                    .add("<Y>", String.valueOf(baseLoc.getBlockY()))
-                    .add("<Z>", String.valueOf(baseLoc.getBlockZ()))
-                    .build();
-
-            // When globally hidden (sneaking/invisible), keep entity count stable and set all lines to empty to avoid respawn flicker.
-            List<Component> newLinesBottomUp;
-            if (isGloballyHidden(player)) {
-                newLinesBottomUp = emptyLines(entity.getEntityIds().size());
-            } else {
-                String nametagTemplate = (String) plugin.config.general.get("nametag");
-                List<Component> rendered = renderLinesBottomUp(nametagTemplate, replacements, player);
-                // Normalize to the current entity count to avoid destroy/spawn
-                newLinesBottomUp = normalizeToSize(rendered, entity.getEntityIds().size());
-            }
+    // Where the line entities spawn, right above the owner's head
+    private Location spawnLocation(NametagEntity.OwnerState state) {
+        org.bukkit.Location location = state.location();
+        return new Location(
+                location.getX(),
+                location.getY() + nametagSpawnHeight,
+                location.getZ(),
+                location.getYaw(),
+                location.getPitch()
+        );
+    }
+
+    private void updateNametagText(Player player, long tick) {
+        NametagEntity entity = playerNametags.get(player.getUniqueId());
+        if (entity == null) return;
 
-            // Update changed lines only (no destroy/spawn to prevent flicker)
-            boolean anyChanged = false;
-            List<Component> old = entity.getLines();
-            if (old.size() != newLinesBottomUp.size()) {
-                // Sizes should generally match due to normalization; if not, normalize old view and continue
-                newLinesBottomUp = normalizeToSize(newLinesBottomUp, old.size());
+        // When globally hidden (sneaking/invisible), keep entity count stable and set all lines to empty to avoid respawn flicker.
+        // Runs on the owner's thread, so this is also where the state other regions read is captured,
+        // only again once the owner moved to another block or its hidden inputs changed. The invisible flag has no
+        // event (setInvisible), it is a plain field read and compared every cycle instead.
+        NametagEntity.OwnerState state = entity.getOwnerState();
+        if (state == null || entity.takeStateDirty() || state.globallyHidden() != isGloballyHidden(player)) {
+            state = captureOwnerState(player, entity);
+        }
+        boolean hidden = state.globallyHidden();
+        // Nothing to do when the visibility state is unchanged and no refresh tier is due yet
+        if (!hidden && !entity.isHidden() && !renderer.isDue(entity, tick)) {
+            // Lines held back by a band's period are caught up once it passed, lines held back from far viewers
+            // once they come closer (flushEnteredBands)
+            if (entity.getPendingLines().isDue(tick)) {
+                sendNametagTextUpdate(player, entity, 0L, false);
             }
-            for (int i = 0; i < newLinesBottomUp.size(); i++) {
-                if (!newLinesBottomUp.get(i).equals(old.get(i))) {
-                    anyChanged = true;
-                    break;
-                }
+            return;
+        }
+
+        if (hidden) {
+            applyHiddenLines(player, entity);
+            return;
+        }
+        // Slow, thread-safe placeholders are resolved on the worker pool and applied on a later tick
+        if (settings.asyncPlaceholders() && renderer.hasAsyncWork(entity, tick)) {
+            submitAsyncRender(player, entity, tick);
+            return;
+        }
+        applyRenderedLines(player, entity, renderer.renderLinesBottomUp(player, entity, tick));
+    }
+
+    private void submitAsyncRender(Player player, NametagEntity entity, long tick) {
+        // At most one render in flight per player, a newer cycle picks up whatever is still due afterwards
+        if (entity.isRenderPending()) return;
+
+        NametagRenderer.RenderJob job = renderer.prepare(player, entity, tick, true);
+        if (!job.hasPendingSlots()) {
+            List<Component> rendered = renderer.complete(job);
+            renderer.apply(job, entity);
+            applyRenderedLines(player, entity, rendered);
+            return;
+        }
+
+        entity.setRenderPending(true);
+        asyncExecutor.execute(() -> {
+            List<Component> rendered;
+            try {
+                renderer.resolveAsync(job);
+                rendered = renderer.complete(job);
+            } catch (Exception e) {
+                plugin.getLogger().warning("Error resolving nametag placeholders for " + player.getName() + ": " + e.getMessage());
+                rendered = null;
             }
+            if (!plugin.isEnabled()) return;
+
+            List<Component> result = rendered;
+            platform.runForPlayer(player, () -> {
+                entity.setRenderPending(false);
+                if (result == null || playerNametags.get(player.getUniqueId()) != entity || !player.isOnline()) return;
+                // Stale if the template was reloaded or a sync render was applied while the placeholders were resolving,
+                // its placeholders stay due for the next cycle unless that render resolved them
+                if (!renderer.apply(job, entity)) return;
+                // Hidden in the meantime, the empty lines stay until the owner becomes visible again
+                if (isGloballyHidden(player)) return;
+                applyRenderedLines(player, entity, result);
+            });
+        });
+    }
 
-            if (anyChanged) {
-                entity.setLines(newLinesBottomUp);
-                sendNametagTextUpdate(player, entity);
+    // Normalize to the current entity count to avoid destroy/spawn, the fingerprints come from the render cache
+    private void applyRenderedLines(Player player, NametagEntity entity, List<Component> rendered) {
+        int size = entity.getLineCount();
+        applyLines(player, entity, normalizeToSize(rendered, size), renderedFingerprints(entity), false);
+    }
+
+    private void applyHiddenLines(Player player, NametagEntity entity) {
+        int size = entity.getLineCount();
+        applyLines(player, entity, emptyLines(size), emptyFingerprints(size), true);
+    }
+
+    // Update changed lines only (no destroy/spawn to prevent flicker)
+    private void applyLines(Player player, NametagEntity entity, List<Component> newLinesBottomUp, long[] fingerprints, boolean hidden) {
+        // Bit i set = line i (bottom-up) changed, compared by fingerprint so no component tree is walked
+        long[] applied = entity.getAppliedFingerprints();
+        long dirtyLines = 0L;
+        for (int i = 0; i < fingerprints.length; i++) {
+            if (i >= applied.length || applied[i] != fingerprints[i]) {
+                dirtyLines |= lineBit(i);
             }
         }
+        entity.setAppliedFingerprints(fingerprints);
+
+        // Hiding and un-hiding reach every viewer right away, regardless of the distance
+        boolean visibilityChanged = entity.isHidden() != hidden;
+        entity.setHidden(hidden);
+        // Relational lines may change for the viewer groups even if the owner's own render didn't
+        long tick = platform.currentTick();
+        boolean relationalDue = !hidden && renderer.isRelationalDue(entity, tick);
+        if (relationalDue) {
+            entity.setRelationalResolvedAt(tick);
+        }
+        if (dirtyLines != 0L || relationalDue) {
+            entity.setLines(newLinesBottomUp);
+            sendNametagTextUpdate(player, entity, dirtyLines, visibilityChanged);
+        }
+    }
+
+    // Lines beyond the 64th share the last bit of the dirty mask
+    private long lineBit(int line) {
+        return 1L << Math.min(line, 63);
     }
 
     // Instant metadata-only swap for visibility state (sneak/invisible) (no destroy/spawn, no delay).
@@ -418,118 +805,175 @@ public class NametagHandler implements Listener {
         NametagEntity entity = playerNametags.get(player.getUniqueId());
         if (entity == null) return;
 
-        List<Component> target;
+        // Only send updates for lines that changed
         if (isGloballyHidden(player)) {
-            target = emptyLines(entity.getEntityIds().size());
+            applyHiddenLines(player, entity);
         } else {
-            org.bukkit.Location baseLoc = player.getLocation().clone();
-            baseLoc.setY(baseLoc.getY() + nametagSpawnHeight);
-            World world = baseLoc.getWorld();
-
-            Replacements replacements = Replacements.builder()
-                    .add("<PLAYER>", player.getName())
-                    .add("<DISPLAYNAME>", player.displayName() != null ? player.displayName().toString() : player.getName())
-                    .add("<WORLD>", world.getName())
-                    .add("<X>", String.valueOf(baseLoc.getBlockX()))
-                    .add("<Y>", String.valueOf(baseLoc.getBlockY()))
-                    .add("<Z>", String.valueOf(baseLoc.getBlockZ()))
-                    .build();
-
-            String nametagTemplate = (String) plugin.config.general.get("nametag");
-            List<Component> rendered = renderLinesBottomUp(nametagTemplate, replacements, player);
-            target = normalizeToSize(rendered, entity.getEntityIds().size());
+            // Keep cached values of async placeholders, the update timer refreshes those off the main thread
+            applyRenderedLines(player, entity, renderer.renderCachedLinesBottomUp(player, entity, platform.currentTick()));
         }
-
-        // Only send updates for lines that changed
-        boolean anyChanged = false;
-        List<Component> old = entity.getLines();
-        for (int i = 0; i < target.size(); i++) {
-            if (!target.get(i).equals(old.get(i))) {
-                anyChanged = true;
-                break;
-            }
-        }
-        if (!anyChanged) return;
-
-        entity.setLines(target);
-        sendNametagTextUpdate(player, entity);
     }
 
     // Non-destructive periodic refresh: re-apply text state and passenger chains without destroy/spawn.
     private void softRefreshNametags() {
+        long start = System.nanoTime();
         cleanupOrphans();
         for (Player owner : Bukkit.getOnlinePlayers()) {
-            NametagEntity entity = playerNametags.get(owner.getUniqueId());
-            if (entity == null) {
-                // If somehow missing, spawn anew (rare). This will only affect that player’s nametag.
-                spawnNametag(owner);
-                continue;
-            }
-            // Re-apply current visibility state instantly (metadata only)
-            updateOwnerVisibilityNametag(owner);
-            // Re-send passenger chain to ensure client keeps the riding hierarchy, scoped per-world and per-visibility
-            resendPassengerChain(owner, entity);
+            platform.executeForPlayer(owner, () -> {
+                NametagEntity entity = playerNametags.get(owner.getUniqueId());
+                if (entity == null) {
+                    // If somehow missing, spawn anew (rare). This will only affect that player’s nametag.
+                    spawnNametag(owner);
+                    return;
+                }
+                // Re-read the hidden inputs (catches sneak and potion changes that raised no event) and re-apply
+                // the current visibility state instantly (metadata only)
+                refreshHiddenInputs(owner, entity);
+                updateOwnerVisibilityNametag(owner);
+                // Re-send passenger chain to ensure client keeps the riding hierarchy, scoped per-world and per-visibility
+                resendPassengerChain(owner, entity);
+            });
         }
+        metrics.record(NametagMetrics.Timer.SOFT_REFRESH, System.nanoTime() - start);
     }
 
-    // Enforce per-viewer visibility transitions (spawn/destroy) based on world and vanish state.
-    private void enforceVisibilityMatrix() {
-        // Iterate owners with nametags
-        for (Map.Entry<UUID, NametagEntity> entry : playerNametags.entrySet()) {
-            UUID ownerId = entry.getKey();
-            Player owner = Bukkit.getPlayer(ownerId);
-            if (owner == null || !owner.isOnline()) continue;
-
-            NametagEntity entity = entry.getValue();
-            List<Integer> ids = entity.getEntityIds();
+    // Enforce one viewer's row of the visibility matrix (package-private for the visibility benchmark)
+    void enforceViewerVisibility(Player viewer) {
+        Collection<? extends Player> online = Bukkit.getOnlinePlayers();
+        int viewerSlot = playerSlots.find(viewer.getUniqueId());
+        if (viewerSlot < 0) return;
+        visibility.ensureCapacity(playerSlots.capacity());
+        // One word per 64 players, rows may be enforced on several region threads at once (Folia)
+        long[] desired = new long[visibility.wordCount()];
+        for (Player owner : online) {
+            if (owner.equals(viewer) || !playerNametags.containsKey(owner.getUniqueId())) continue;
+            if (!shouldHideForViewer(owner, viewer)) {
+                int ownerSlot = playerSlots.find(owner.getUniqueId());
+                // Released by a quit, or taken past the sized row by a join, on another thread since the row was sized
+                if (ownerSlot < 0 || ownerSlot >>> 6 >= desired.length) continue;
+                desired[ownerSlot >>> 6] |= 1L << ownerSlot;
+            }
+        }
 
-            for (Player viewer : Bukkit.getOnlinePlayers()) {
-                if (viewer.getUniqueId().equals(ownerId)) continue;
-
-                boolean desiredVisible = !shouldHideForViewer(owner, viewer);
-                boolean lastVisible = getLastVisibility(viewer, owner);
-
-                if (desiredVisible && !lastVisible) {
-                    // Spawn to this viewer now
-                    showNametagToPlayer(owner, viewer);
-                    setLastVisibility(viewer, owner, true);
-                } else if (!desiredVisible && lastVisible) {
-                    // Destroy for this viewer now
-                    sendDestroyToViewer(viewer, ids);
-                    setLastVisibility(viewer, owner, false);
+        // Word-wise compare of desired and last state, only differing bits cause a spawn/destroy
+        visibility.forEachChange(viewerSlot, desired, (ownerSlot, visible) -> {
+            UUID ownerId = playerSlots.playerAt(ownerSlot);
+            Player owner = ownerId != null ? Bukkit.getPlayer(ownerId) : null;
+            NametagEntity entity = ownerId != null ? playerNametags.get(ownerId) : null;
+            if (visible && owner != null) {
+                // Spawn to this viewer now
+                showNametagToPlayer(owner, viewer);
+                visibility.set(viewerSlot, ownerSlot, true);
+            } else {
+                // Destroy for this viewer now (only owners that still have a nametag)
+                if (entity != null) {
+                    sendDestroyToViewer(viewer, entity.getEntityIds());
                 }
+                visibility.set(viewerSlot, ownerSlot, false);
             }
-        }
+        });
     }
 
     private void resendPassengerChain(Player owner, NametagEntity entity) {
+        List<PacketWrapper<?>> passengerPackets = new ArrayList<>(entity.getEntityIds().length);
         int parentId = owner.getEntityId();
         for (int lineEntityId : entity.getEntityIds()) {
-            WrapperPlayServerSetPassengers passengersPacket = new WrapperPlayServerSetPassengers(parentId, new int[]{lineEntityId});
-            for (Player viewer : Bukkit.getOnlinePlayers()) {
-                if (viewer.equals(owner)) continue;
-                if (!shouldHideForViewer(owner, viewer)) {
-                    PacketEvents.getAPI().getPlayerManager().sendPacket(viewer, passengersPacket);
-                } else {
-                    // Ensure hidden in other worlds or for viewers that cannot see the owner
-                    sendDestroyToViewer(viewer, entity.getEntityIds());
-                    setLastVisibility(viewer, owner, false);
-                }
-            }
+            passengerPackets.add(new WrapperPlayServerSetPassengers(parentId, new int[]{lineEntityId}));
             parentId = lineEntityId;
         }
+        for (Player viewer : Bukkit.getOnlinePlayers()) {
+            if (viewer.equals(owner)) continue;
+            if (!shouldHideForViewer(owner, viewer)) {
+                nametagPackets.sendBundle(viewer, passengerPackets);
+            } else if (getLastVisibility(viewer, owner)) {
+                // Ensure hidden in other worlds, out of tracking range or for viewers that cannot see the owner
+                sendDestroyToViewer(viewer, entity.getEntityIds());
+                setLastVisibility(viewer, owner, false);
+            }
+        }
+    }
+
+    // Capture the owner's location and hidden state, must run on the thread that owns the owner
+    private NametagEntity.OwnerState captureOwnerState(Player owner, NametagEntity entity) {
+        NametagEntity.OwnerState state = new NametagEntity.OwnerState(owner.getLocation(), isGloballyHidden(owner));
+        if (entity != null) {
+            entity.setOwnerState(state);
+        }
+        return state;
+    }
+
+    // Live state when this thread owns the owner (always on Paper), otherwise the last capture (another region on Folia)
+    private NametagEntity.OwnerState ownerState(Player owner, NametagEntity entity) {
+        NametagEntity.OwnerState state = entity.getOwnerState();
+        if (state == null || platform.ownsPlayer(owner)) {
+            return captureOwnerState(owner, entity);
+        }
+        return state;
     }
 
     private boolean isGloballyHidden(Player owner) {
-        // Hide nametag when sneaking or invisible via potion/flag
-        return owner.isSneaking()
-                || owner.hasPotionEffect(PotionEffectType.INVISIBILITY)
-                || owner.isInvisible();
+        // Hide nametag when sneaking or invisible via potion/flag.
+        // Sneaking and the potion are kept on the tag from the owner's events, the invisible flag is a plain field read
+        NametagEntity entity = playerNametags.get(owner.getUniqueId());
+        if (entity == null) {
+            return owner.isSneaking()
+                    || owner.hasPotionEffect(PotionEffectType.INVISIBILITY)
+                    || owner.isInvisible();
+        }
+        return entity.isSneaking() || entity.hasInvisibilityEffect() || owner.isInvisible();
+    }
+
+    // Read the hidden inputs from the owner, events keep them up to date afterwards (owner's thread)
+    private void refreshHiddenInputs(Player owner, NametagEntity entity) {
+        entity.setSneaking(owner.isSneaking());
+        entity.setInvisibilityEffect(owner.hasPotionEffect(PotionEffectType.INVISIBILITY));
+        entity.markStateDirty();
     }
 
     private boolean shouldHideForViewer(Player owner, Player viewer) {
-        // Hide from viewer if not same world or viewer cannot see owner (e.g., vanished)
-        return !sameWorld(owner, viewer) || !viewer.canSee(owner);
+        // Hide from viewer if the server doesn't track the owner for them (other world, out of range),
+        // or viewer cannot see owner (e.g., vanished)
+        return !isTracked(viewer, owner) || !sameWorld(owner, viewer) || !viewer.canSee(owner);
+    }
+
+    private boolean isTracked(Player viewer, Player owner) {
+        int viewerSlot = playerSlots.find(viewer.getUniqueId());
+        int ownerSlot = playerSlots.find(owner.getUniqueId());
+        if (viewerSlot < 0 || ownerSlot < 0) return false;
+        return tracked.get(viewerSlot, ownerSlot);
+    }
+
+    // Players online before the listener (plugin reload): the server tracks the pairs within its player tracking range,
+    // the next spawn/destroy of the owner corrects the estimate
+    private void seedTrackedPairs() {
+        Map<UUID, Double> rangeSquaredByWorld = new HashMap<>();
+        for (Player viewer : Bukkit.getOnlinePlayers()) {
+            org.bukkit.Location viewerLocation = viewer.getLocation();
+            double rangeSquared = rangeSquaredByWorld.computeIfAbsent(viewerLocation.getWorld().getUID(), id -> {
+                double range = playerTrackingRange(viewerLocation.getWorld());
+                return range * range;
+            });
+            int viewerSlot = playerSlots.find(viewer.getUniqueId());
+            for (Player owner : Bukkit.getOnlinePlayers()) {
+                if (viewer.equals(owner) || !sameWorld(owner, viewer)) continue;
+                int ownerSlot = playerSlots.find(owner.getUniqueId());
+                if (viewerSlot >= 0 && ownerSlot >= 0 && owner.getLocation().distanceSquared(viewerLocation) <= rangeSquared) {
+                    tracked.set(viewerSlot, ownerSlot, true);
+                }
+            }
+        }
+    }
+
+    // spigot.yml's entity-tracking-range.players of the world (48 by default), capped by the view distance like the server does
+    private static double playerTrackingRange(World world) {
+        double range = 48.0D;
+        YamlConfiguration spigot = Bukkit.spigot() != null ? Bukkit.spigot().getConfig() : null;
+        if (spigot != null) {
+            range = spigot.getDouble("world-settings.default.entity-tracking-range.players", range);
+            range = spigot.getDouble("world-settings." + world.getName() + ".entity-tracking-range.players", range);
+        }
+        int viewDistance = world.getViewDistance();
+        return viewDistance > 0 ? Math.min(range, viewDistance * 16.0D) : range;
     }
 
     private boolean sameWorld(Player a, Player b) {
@@ -537,97 +981,244 @@ public class NametagHandler implements Listener {
     }
 
     private boolean getLastVisibility(Player viewer, Player owner) {
-        Map<UUID, Boolean> m = viewerVisibility.get(viewer.getUniqueId());
-        if (m == null) return false;
-        return m.getOrDefault(owner.getUniqueId(), false);
+        int viewerSlot = playerSlots.find(viewer.getUniqueId());
+        int ownerSlot = playerSlots.find(owner.getUniqueId());
+        if (viewerSlot < 0 || ownerSlot < 0) return false;
+        return visibility.get(viewerSlot, ownerSlot);
     }
 
     private void setLastVisibility(Player viewer, Player owner, boolean visible) {
-        viewerVisibility
-                .computeIfAbsent(viewer.getUniqueId(), k -> new ConcurrentHashMap<>())
-                .put(owner.getUniqueId(), visible);
+        int viewerSlot = playerSlots.find(viewer.getUniqueId());
+        int ownerSlot = playerSlots.find(owner.getUniqueId());
+        if (viewerSlot < 0 || ownerSlot < 0) return;
+        visibility.set(viewerSlot, ownerSlot, visible);
     }
 
     private void clearOwnerFromVisibilityCache(UUID ownerId) {
-        for (Map<UUID, Boolean> m : viewerVisibility.values()) {
-            if (m != null) {
-                m.remove(ownerId);
-            }
+        int slot = playerSlots.find(ownerId);
+        if (slot >= 0) {
+            visibility.clearColumn(slot);
         }
     }
 
     private void clearViewerFromVisibilityCache(UUID viewerId) {
-        viewerVisibility.remove(viewerId);
+        int slot = playerSlots.find(viewerId);
+        if (slot >= 0) {
+            visibility.clearRow(slot);
+        }
+    }
+
+    // Free the player's slot for reuse, its row and column must not leak into the next player
+    private void releaseSlot(UUID playerId) {
+        clearViewerFromVisibilityCache(playerId);
+        clearOwnerFromVisibilityCache(playerId);
+        int slot = playerSlots.find(playerId);
+        if (slot >= 0) {
+            tracked.clearRow(slot);
+            tracked.clearColumn(slot);
+            farBacklog.clearRow(slot);
+            farBacklog.clearColumn(slot);
+            farBacklogByOwner.clearRow(slot);
+            farBacklogByOwner.clearColumn(slot);
+        }
+        playerSlots.release(playerId);
     }
 
     private List<Component> normalizeToSize(List<Component> src, int size) {
+        if (src.size() == size) return src;
+        // Pad with the shared empty line, or trim if src is longer (avoid respawn)
         List<Component> out = new ArrayList<>(size);
         for (int i = 0; i < size; i++) {
-            if (i < src.size()) {
-                out.add(src.get(i));
-            } else {
-                out.add(Component.text(""));
-            }
+            out.add(i < src.size() ? src.get(i) : NametagRenderer.EMPTY_LINE);
         }
-        // If src is longer, trim to size (avoid respawn)
-        if (out.size() > size) {
-            return new ArrayList<>(out.subList(0, size));
+        return out;
+    }
+
+    // Fingerprints of the render cache, normalized like the lines (padding is empty)
+    private long[] renderedFingerprints(NametagEntity entity) {
+        long[] fingerprints = entity.getFingerprints();
+        int size = entity.getLineCount();
+        long[] out = Arrays.copyOf(fingerprints, size);
+        if (fingerprints.length < size) {
+            Arrays.fill(out, fingerprints.length, size, NametagRenderer.EMPTY_FINGERPRINT);
         }
         return out;
     }
 
+    // Immutable, shared by every hidden tag of this size
     private List<Component> emptyLines(int size) {
-        List<Component> out = new ArrayList<>(size);
-        for (int i = 0; i < size; i++) {
-            out.add(Component.text(""));
+        return Collections.nCopies(size, NametagRenderer.EMPTY_LINE);
+    }
+
+    private long[] emptyFingerprints(int size) {
+        long[] cached = emptyFingerprints;
+        if (cached.length != size) {
+            cached = new long[size];
+            Arrays.fill(cached, NametagRenderer.EMPTY_FINGERPRINT);
+            emptyFingerprints = cached;
         }
-        return out;
+        return cached;
     }
 
-    private void sendNametagTextUpdate(Player owner, NametagEntity entity) {
-        List<Integer> ids = entity.getEntityIds();
+    // Send the changed lines to every eligible viewer, held back per viewer by distance (level of detail).
+    // urgent skips the level of detail, e.g. when the tag is hidden or shown.
+    private void sendNametagTextUpdate(Player owner, NametagEntity entity, long dirtyLines, boolean urgent) {
+        int[] ids = entity.getEntityIds();
         List<Component> lines = entity.getLines();
+        long tick = platform.currentTick();
+        entity.getPendingLines().startPass();
+
+        // Resolve the eligible viewers once for all lines
+        List<Player> viewers = new ArrayList<>();
+        for (Player viewer : Bukkit.getOnlinePlayers()) {
+            if (viewer.equals(owner)) continue;
+            if (!shouldHideForViewer(owner, viewer)) {
+                viewers.add(viewer);
+            } else if (getLastVisibility(viewer, owner)) {
+                // If viewer is in a different world, out of range or cannot see the owner, ensure the nametag is destroyed for them
+                sendDestroyToViewer(viewer, ids);
+                setLastVisibility(viewer, owner, false);
+            }
+        }
+        if (viewers.isEmpty()) return;
+
+        // Hidden tags show the same empty lines to everyone
+        long relationalMask = entity.isHidden() ? 0L : renderer.getRelationalMask();
+
+        // Relational lines are rendered once per viewer relation group, their changes count for the whole group
+        Map<String, Long> groupChanges = new HashMap<>();
+        String[] viewerKeys = new String[viewers.size()];
+        if (relationalMask != 0L) {
+            for (int v = 0; v < viewers.size(); v++) {
+                Player viewer = viewers.get(v);
+                String key = renderer.relationKey(viewer, tick);
+                viewerKeys[v] = key;
+                if (!groupChanges.containsKey(key)) {
+                    groupChanges.put(key, renderer.renderRelational(owner, entity, viewer, key, tick));
+                }
+            }
+        }
 
-        // For each line entity, send metadata update for text (index 23)
-        for (int i = 0; i < ids.size(); i++) {
-            int entityId = ids.get(i);
-            List<EntityData<?>> metadata = new ArrayList<>();
-            Component text = lines.get(i);
-            metadata.add(new EntityData<>(23, EntityDataTypes.ADV_COMPONENT, text));
-            WrapperPlayServerEntityMetadata metadataPacket = new WrapperPlayServerEntityMetadata(entityId, metadata);
+        // Lines each viewer receives now, the rest stays in the viewer's backlog
+        long[] sendMasks = new long[viewers.size()];
+        NametagSettings settings = this.settings;
+        org.bukkit.Location ownerLocation = null;
+        int ownerSlot = playerSlots.find(owner.getUniqueId());
+        if (ownerSlot < 0) return;
+        long sendUnion = 0L;
+        for (int v = 0; v < viewers.size(); v++) {
+            Player viewer = viewers.get(v);
+            int viewerSlot = playerSlots.find(viewer.getUniqueId());
+            if (viewerSlot < 0) continue;
+            long changed = dirtyLines | (viewerKeys[v] != null ? groupChanges.get(viewerKeys[v]) : 0L);
+            entity.getPendingLines().add(viewerSlot, changed);
+
+            long allowed = -1L;
+            int period = 0;
+            boolean far = false;
+            if (settings.lodEnabled() && !urgent) {
+                if (ownerLocation == null) ownerLocation = ownerState(owner, entity).location();
+                // A stale capture from another world (Folia) counts as far away
+                org.bukkit.Location viewerLocation = viewer.getLocation();
+                double distanceSquared = viewerLocation.getWorld() == ownerLocation.getWorld()
+                        ? viewerLocation.distanceSquared(ownerLocation)
+                        : Double.MAX_VALUE;
+                if (distanceSquared > settings.lodMidSquared()) {
+                    // Far: only the name line, slowly
+                    allowed = renderer.getNameLineMask();
+                    period = settings.lodFarPeriod();
+                    far = true;
+                } else if (distanceSquared > settings.lodNearSquared()) {
+                    period = settings.lodMidPeriod();
+                }
+            }
+            sendMasks[v] = entity.getPendingLines().take(viewerSlot, allowed, period, tick);
+            if (entity.isSingleEntity() && sendMasks[v] != 0L) {
+                // The joined text always carries every line, so the rest of the backlog goes along
+                sendMasks[v] |= entity.getPendingLines().take(viewerSlot, -1L, 0, tick);
+            }
+            sendUnion |= sendMasks[v];
+            // Remembered for the moves that bring this viewer within the mid band again
+            boolean held = far && entity.getPendingLines().hasPending(viewerSlot);
+            if (held != farBacklog.get(viewerSlot, ownerSlot)) {
+                setFarBacklog(viewerSlot, ownerSlot, held);
+            }
+        }
+        if (entity.isSingleEntity()) {
+            if (sendUnion != 0L) sendJoinedText(entity, viewers, viewerKeys, sendMasks, relationalMask);
+            return;
+        }
 
-            for (Player viewer : Bukkit.getOnlinePlayers()) {
-                if (viewer.equals(owner)) continue;
-                if (!shouldHideForViewer(owner, viewer)) {
-                    PacketEvents.getAPI().getPlayerManager().sendPacket(viewer, metadataPacket);
-                } else {
-                    // If viewer is in a different world or cannot see the owner, ensure the nametag is destroyed for them
-                    sendDestroyToViewer(viewer, ids);
-                    setLastVisibility(viewer, owner, false);
+        // For each line entity, send the text metadata (index 23), encoded once for all viewers that get it
+        for (int i = 0; i < ids.length; i++) {
+            long bit = lineBit(i);
+            if ((sendUnion & bit) == 0L) continue;
+            boolean relational = (relationalMask & bit) != 0L;
+            Map<String, List<Player>> recipients = new HashMap<>();
+            for (int v = 0; v < viewers.size(); v++) {
+                if ((sendMasks[v] & bit) == 0L) continue;
+                String key = relational ? viewerKeys[v] : "";
+                recipients.computeIfAbsent(key, k -> new ArrayList<>()).add(viewers.get(v));
+            }
+            for (Map.Entry<String, List<Player>> group : recipients.entrySet()) {
+                Component line = relational ? renderer.relationalLine(entity, group.getKey(), i) : lines.get(i);
+                if (line == null) continue;
+                nametagPackets.broadcast(group.getValue(), nametagPackets.textMetadata(ids[i], line));
+                metrics.add(NametagMetrics.Counter.METADATA_UPDATES, group.getValue().size());
+            }
+        }
+    }
+
+    // Single entity mode: one metadata packet with the whole joined text per recipient (relation) group
+    private void sendJoinedText(NametagEntity entity, List<Player> viewers, String[] viewerKeys, long[] sendMasks, long relationalMask) {
+        List<Component> lines = entity.getLines();
+        Map<String, List<Player>> recipients = new HashMap<>();
+        for (int v = 0; v < viewers.size(); v++) {
+            if (sendMasks[v] == 0L) continue;
+            String key = relationalMask != 0L ? viewerKeys[v] : "";
+            recipients.computeIfAbsent(key, k -> new ArrayList<>()).add(viewers.get(v));
+        }
+        for (Map.Entry<String, List<Player>> group : recipients.entrySet()) {
+            List<Component> groupLines = lines;
+            if (relationalMask != 0L) {
+                groupLines = new ArrayList<>(lines);
+                for (int i = 0; i < groupLines.size(); i++) {
+                    if ((relationalMask & lineBit(i)) == 0L) continue;
+                    Component relational = renderer.relationalLine(entity, group.getKey(), i);
+                    if (relational != null) groupLines.set(i, relational);
                 }
             }
+            Component text = NametagRenderer.joinLines(groupLines);
+            nametagPackets.broadcast(group.getValue(), nametagPackets.textMetadata(entity.getEntityIds()[0], text));
+            metrics.add(NametagMetrics.Counter.METADATA_UPDATES, group.getValue().size());
         }
     }
 
-    private void sendDestroyToViewer(Player viewer, List<Integer> entityIds) {
-        for (int entityId : entityIds) {
-            WrapperPlayServerDestroyEntities destroyPacket = new WrapperPlayServerDestroyEntities(entityId);
-            PacketEvents.getAPI().getPlayerManager().sendPacket(viewer, destroyPacket);
+    // Without a relation key every viewer is its own group, drop the groups of a leaving viewer
+    private void forgetRelationViewer(UUID viewerId) {
+        renderer.forgetViewer(viewerId);
+        for (NametagEntity entity : playerNametags.values()) {
+            entity.getRelationViews().remove(viewerId.toString());
         }
     }
 
+    private void sendDestroyToViewer(Player viewer, int[] entityIds) {
+        nametagPackets.destroy(viewer, entityIds);
+        metrics.increment(NametagMetrics.Counter.DESTROYS);
+    }
+
     private void removeNametag(Player player) {
         NametagEntity entity = playerNametags.remove(player.getUniqueId());
         // Remove this owner from all viewer caches
         clearOwnerFromVisibilityCache(player.getUniqueId());
         if (entity != null) {
-            // Destroy all line entities for this player's nametag
-            for (int entityId : entity.getEntityIds()) {
-                WrapperPlayServerDestroyEntities destroyPacket = new WrapperPlayServerDestroyEntities(entityId);
-                for (Player viewer : Bukkit.getOnlinePlayers()) {
-                    PacketEvents.getAPI().getPlayerManager().sendPacket(viewer, destroyPacket);
-                }
+            // Destroy all line entities for this player's nametag, one packet per viewer
+            int[] ids = entity.getEntityIds();
+            for (Player viewer : Bukkit.getOnlinePlayers()) {
+                sendDestroyToViewer(viewer, ids);
             }
+            // Gone for every client, the next player may use the IDs
+            entityIdPool.release(ids);
         }
     }
 
@@ -636,53 +1227,258 @@ public class NametagHandler implements Listener {
         for (UUID uuid : new ArrayList<>(playerNametags.keySet())) {
             Player player = Bukkit.getPlayer(uuid);
             if (player == null || !player.isOnline()) {
-                playerNametags.remove(uuid);
+                NametagEntity entity = playerNametags.remove(uuid);
                 clearOwnerFromVisibilityCache(uuid);
+                if (entity == null) continue;
+                // Make sure no client keeps the lines before they are handed out again
+                for (Player viewer : Bukkit.getOnlinePlayers()) {
+                    sendDestroyToViewer(viewer, entity.getEntityIds());
+                }
+                entityIdPool.release(entity.getEntityIds());
             }
         }
-        // Remove offline viewers from cache
-        for (UUID viewerId : new ArrayList<>(viewerVisibility.keySet())) {
+        // Release slots of offline viewers
+        for (int slot = 0; slot < playerSlots.capacity(); slot++) {
+            UUID viewerId = playerSlots.playerAt(slot);
+            if (viewerId == null) continue;
             Player viewer = Bukkit.getPlayer(viewerId);
             if (viewer == null || !viewer.isOnline()) {
-                clearViewerFromVisibilityCache(viewerId);
+                releaseSlot(viewerId);
             }
         }
     }
 
-    public void removeAllNametagsOnShutdown() {
-        for (Map.Entry<UUID, NametagEntity> entry : playerNametags.entrySet()) {
-            // Destroy all line entities for each nametag
-            for (int entityId : entry.getValue().getEntityIds()) {
-                WrapperPlayServerDestroyEntities destroyPacket = new WrapperPlayServerDestroyEntities(entityId);
-                for (Player viewer : Bukkit.getOnlinePlayers()) {
-                    PacketEvents.getAPI().getPlayerManager().sendPacket(viewer, destroyPacket);
-                }
-            }
+    public void shutdown() {
+        scheduler.stop();
+        PacketEvents.getAPI().getEventManager().unregisterListener(trackerListener);
+        if (visibilityTask != null) {
+            visibilityTask.cancel();
         }
-        playerNametags.clear();
-        viewerVisibility.clear();
+        if (packetTimer != null) {
+            packetTimer.cancel();
+        }
+        // Destroys on shutdown must not wait for a queue that is no longer drained
+        nametagPackets.setViewerBudget(0);
+        if (metricsTimer != null) {
+            metricsTimer.cancel();
+        }
+        if (adaptiveTimer != null) {
+            adaptiveTimer.cancel();
+        }
+        asyncExecutor.shutdownNow();
+        removeAllNametagsOnShutdown();
+        // Let the writer thread send the destroys before PacketEvents terminates
+        nametagPackets.shutdown();
+        platform.shutdown();
     }
 
-    private void reloadNametags() {
-        removeAllNametagsOnShutdown();
-        for (Player onlinePlayer : Bukkit.getOnlinePlayers()) {
-            spawnNametag(onlinePlayer);
+    public void removeAllNametagsOnShutdown() {
+        // Destroy all line entities of every nametag with a single packet per viewer
+        int total = 0;
+        for (NametagEntity entity : playerNametags.values()) {
+            total += entity.getEntityIds().length;
+        }
+        int[] ids = new int[total];
+        int offset = 0;
+        for (NametagEntity entity : playerNametags.values()) {
+            int[] entityIds = entity.getEntityIds();
+            System.arraycopy(entityIds, 0, ids, offset, entityIds.length);
+            offset += entityIds.length;
         }
+        for (Player viewer : Bukkit.getOnlinePlayers()) {
+            nametagPackets.destroy(viewer, ids);
+        }
+        playerNametags.clear();
+        visibility.clear();
+        farBacklog.clear();
+        farBacklogByOwner.clear();
     }
 
     public static class NametagEntity {
-        private final List<Integer> entityIds; // bottom-up order
-        private List<Component> lines; // bottom-up order
-
-        public NametagEntity(List<Integer> entityIds, List<Component> lines) {
+        private volatile int[] entityIds; // bottom-up order, replaced as a whole when a reload adds or removes lines
+        private final boolean singleEntity; // all lines joined into the one entity of entityIds
+        private volatile List<Component> lines; // bottom-up order, replaced as a whole so other threads may read it
+        private volatile OwnerState ownerState; // last capture on the owner's thread
+        private final PendingLines pendingLines = new PendingLines(); // lines held back per viewer (level of detail)
+        private final Map<String, RelationView> relationViews = new ConcurrentHashMap<>(); // relation key -> relational lines
+        private long relationalResolvedAt = -1; // tick the relational lines were last refreshed for all groups
+        private String[] sources = new String[0]; // last resolved template text per line, bottom-up
+        private Component[] rendered = new Component[0]; // parsed component for each cached source
+        private long[] fingerprints = new long[0]; // fingerprint of each cached source
+        private long[] appliedFingerprints = new long[0]; // fingerprint of each line in lines
+        private String[] placeholderValues = new String[0]; // resolved value per template placeholder slot
+        private long[] placeholderResolvedAt = new long[0]; // tick each placeholder slot was last resolved
+        private long tokensResolvedAt = -1; // tick the built-in tokens were last resolved
+        private volatile int tokenChanges; // bumped by the owner's events when a token input (position, world) changed
+        private int tokenChangesResolved; // tokenChanges the built-in tokens were last resolved for
+        private volatile boolean stateDirty = true; // location or hidden state changed since the last owner state capture
+        private volatile boolean sneaking; // hidden inputs, kept up to date from the owner's events
+        private volatile boolean invisibilityEffect;
+        private boolean hidden; // whether the empty (sneak/invisible) lines are currently applied
+        private int templateVersion; // template compile the render cache belongs to, invalidates in-flight renders
+        private boolean renderPending; // an async placeholder render is in flight
+        private int renderGeneration; // bumped by every applied render, a render prepared before that is stale
+
+        public NametagEntity(int[] entityIds, List<Component> lines, boolean singleEntity) {
             this.entityIds = entityIds;
             this.lines = lines;
+            this.singleEntity = singleEntity;
+        }
+
+        public boolean isSingleEntity() {
+            return singleEntity;
+        }
+
+        // Template lines shown by this tag, one entity each unless it is a single entity
+        public int getLineCount() {
+            return singleEntity ? lines.size() : entityIds.length;
+        }
+
+        public String[] getSources() {
+            return sources;
+        }
+
+        public Component[] getRendered() {
+            return rendered;
+        }
+
+        public long[] getFingerprints() {
+            return fingerprints;
+        }
+
+        public long[] getAppliedFingerprints() {
+            return appliedFingerprints;
+        }
+
+        public void setAppliedFingerprints(long[] appliedFingerprints) {
+            this.appliedFingerprints = appliedFingerprints;
+        }
+
+        public String[] getPlaceholderValues() {
+            return placeholderValues;
+        }
+
+        public long[] getPlaceholderResolvedAt() {
+            return placeholderResolvedAt;
+        }
+
+        public long getTokensResolvedAt() {
+            return tokensResolvedAt;
+        }
+
+        public void setTokensResolvedAt(long tokensResolvedAt) {
+            this.tokensResolvedAt = tokensResolvedAt;
+        }
+
+        public int getTokenChanges() {
+            return tokenChanges;
         }
 
-        public List<Integer> getEntityIds() {
+        // Owner's thread only
+        public void invalidateTokens() {
+            this.tokenChanges++;
+        }
+
+        public int getTokenChangesResolved() {
+            return tokenChangesResolved;
+        }
+
+        public void setTokenChangesResolved(int tokenChangesResolved) {
+            this.tokenChangesResolved = tokenChangesResolved;
+        }
+
+        public void markStateDirty() {
+            this.stateDirty = true;
+        }
+
+        // Whether the owner state must be captured again, clears the flag (owner's thread only)
+        public boolean takeStateDirty() {
+            boolean dirty = stateDirty;
+            this.stateDirty = false;
+            return dirty;
+        }
+
+        public boolean isSneaking() {
+            return sneaking;
+        }
+
+        public void setSneaking(boolean sneaking) {
+            this.sneaking = sneaking;
+        }
+
+        public boolean hasInvisibilityEffect() {
+            return invisibilityEffect;
+        }
+
+        public void setInvisibilityEffect(boolean invisibilityEffect) {
+            this.invisibilityEffect = invisibilityEffect;
+        }
+
+        public boolean isHidden() {
+            return hidden;
+        }
+
+        public void setHidden(boolean hidden) {
+            this.hidden = hidden;
+        }
+
+        public int getTemplateVersion() {
+            return templateVersion;
+        }
+
+        public int getRenderGeneration() {
+            return renderGeneration;
+        }
+
+        // Main thread (owner's thread on Folia)
+        public void nextRenderGeneration() {
+            this.renderGeneration++;
+        }
+
+        public boolean isRenderPending() {
+            return renderPending;
+        }
+
+        public void setRenderPending(boolean renderPending) {
+            this.renderPending = renderPending;
+        }
+
+        public PendingLines getPendingLines() {
+            return pendingLines;
+        }
+
+        public Map<String, RelationView> getRelationViews() {
+            return relationViews;
+        }
+
+        public long getRelationalResolvedAt() {
+            return relationalResolvedAt;
+        }
+
+        public void setRelationalResolvedAt(long relationalResolvedAt) {
+            this.relationalResolvedAt = relationalResolvedAt;
+        }
+
+        public void resetRenderCache(int size, int placeholderCount, int templateVersion) {
+            this.templateVersion = templateVersion;
+            this.relationViews.clear();
+            this.relationalResolvedAt = -1;
+            this.sources = new String[size];
+            this.rendered = new Component[size];
+            this.fingerprints = new long[size];
+            this.placeholderValues = new String[placeholderCount];
+            this.placeholderResolvedAt = new long[placeholderCount];
+            this.tokensResolvedAt = -1;
+        }
+
+        public int[] getEntityIds() {
             return entityIds;
         }
 
+        public void setEntityIds(int[] entityIds) {
+            this.entityIds = entityIds;
+        }
+
         public List<Component> getLines() {
             return lines;
         }
@@ -690,5 +1486,31 @@ public class NametagHandler implements Listener {
         public void setLines(List<Component> lines) {
             this.lines = lines;
         }
+
+        public OwnerState getOwnerState() {
+            return ownerState;
+        }
+
+        public void setOwnerState(OwnerState ownerState) {
+            this.ownerState = ownerState;
+        }
+
+        // Owner state that viewers on other region threads may read (Folia)
+        public record OwnerState(org.bukkit.Location location, boolean globallyHidden) {
+        }
+
+        // Relational lines of this tag for one viewer relation group, indexed bottom-up like the lines
+        public static final class RelationView {
+            final String[] sources; // owner's resolved line text the relational text was built from
+            final String[] resolved; // line text after resolving the relational placeholders
+            final Component[] rendered;
+            long resolvedAt = -1;
+
+            public RelationView(int size) {
+                this.sources = new String[size];
+                this.resolved = new String[size];
+                this.rendered = new Component[size];
+            }
+        }
     }
 }
\ No newline at end of file
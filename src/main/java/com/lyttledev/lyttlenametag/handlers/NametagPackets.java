@@ -0,0 +1,468 @@
+package com.lyttledev.lyttlenametag.handlers;
+
+import com.github.retrooper.packetevents.PacketEvents;
+import com.github.retrooper.packetevents.manager.server.ServerVersion;
+import com.github.retrooper.packetevents.netty.buffer.ByteBufHelper;
+import com.github.retrooper.packetevents.netty.channel.ChannelHelper;
+import com.github.retrooper.packetevents.protocol.entity.data.EntityData;
+import com.github.retrooper.packetevents.protocol.entity.data.EntityDataTypes;
+import com.github.retrooper.packetevents.protocol.entity.type.EntityTypes;
+import com.github.retrooper.packetevents.protocol.player.ClientVersion;
+import com.github.retrooper.packetevents.protocol.player.User;
+import com.github.retrooper.packetevents.protocol.world.Location;
+import com.github.retrooper.packetevents.util.Vector3d;
+import com.github.retrooper.packetevents.util.Vector3f;
+import com.github.retrooper.packetevents.wrapper.PacketWrapper;
+import com.github.retrooper.packetevents.wrapper.play.server.WrapperPlayServerBundle;
+import com.github.retrooper.packetevents.wrapper.play.server.WrapperPlayServerDestroyEntities;
+import com.github.retrooper.packetevents.wrapper.play.server.WrapperPlayServerEntityMetadata;
+import com.github.retrooper.packetevents.wrapper.play.server.WrapperPlayServerSetPassengers;
+import com.github.retrooper.packetevents.wrapper.play.server.WrapperPlayServerSpawnEntity;
+import com.lyttledev.lyttlenametag.types.EntityIdPool;
+import com.lyttledev.lyttlenametag.types.NametagMetrics;
+import io.netty.channel.Channel;
+import net.kyori.adventure.text.Component;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+// Packet layer for nametag entities: batches writes per viewer and flushes the connection once.
+// With off-thread fan-out (Folia) every send is handed to a single writer thread, so region threads never
+// encode or write packets themselves and the order of all nametag packets is kept.
+// With a viewer budget every viewer gets at most that many nametag packets per tick: the rest waits in the viewer's
+// queue, spawns/destroys go before text updates, and a newer text update replaces a queued one of the same entity.
+public class NametagPackets {
+    private final Logger logger;
+    private final NametagMetrics metrics;
+    private final boolean serverSupportsBundles;
+    private final ExecutorService fanOut; // null = write on the calling thread
+    private volatile boolean broadcastEncodingFailed; // fall back to per-viewer encoding if the shared buffer path breaks
+    private final Map<UUID, ViewerQueue> queues = new ConcurrentHashMap<>();
+    private volatile int viewerBudget; // packets per viewer per tick, 0 = unlimited (no queueing)
+    private volatile long tick; // advanced by drain, resets the per-tick budgets
+
+    public NametagPackets(Logger logger, NametagMetrics metrics, boolean offThreadFanOut) {
+        this.logger = logger;
+        this.metrics = metrics;
+        this.serverSupportsBundles = PacketEvents.getAPI().getServerManager().getVersion().isNewerThanOrEquals(ServerVersion.V_1_19_4);
+        this.fanOut = offThreadFanOut
+                ? Executors.newSingleThreadExecutor(Thread.ofVirtual().name("LyttleNametag-packets").factory())
+                : null;
+    }
+
+    private void dispatch(Runnable write) {
+        if (fanOut == null) {
+            write.run();
+            return;
+        }
+        fanOut.execute(() -> {
+            try {
+                write.run();
+            } catch (Exception e) {
+                logger.warning("Error sending nametag packets: " + e.getMessage());
+            }
+        });
+    }
+
+    public void setViewerBudget(int packetsPerTick) {
+        this.viewerBudget = Math.max(0, packetsPerTick);
+    }
+
+    public void forgetViewer(UUID viewer) {
+        queues.remove(viewer);
+    }
+
+    // Called once per tick: start a new budget and send what fits of every viewer's queue
+    public void drain(long tick) {
+        this.tick = tick;
+        int budget = viewerBudget;
+        if (queues.isEmpty()) return;
+
+        Map<PacketWrapper<?>, List<Player>> metadataGroups = new IdentityHashMap<>();
+        for (Iterator<ViewerQueue> iterator = queues.values().iterator(); iterator.hasNext(); ) {
+            ViewerQueue queue = iterator.next();
+            if (!queue.viewer.isOnline()) {
+                iterator.remove();
+                continue;
+            }
+            List<List<PacketWrapper<?>>> urgent = new ArrayList<>();
+            List<PacketWrapper<?>> metadata = new ArrayList<>();
+            queue.poll(tick, budget, urgent, metadata);
+            for (List<PacketWrapper<?>> packets : urgent) {
+                dispatch(() -> writeBundle(queue.viewer, packets));
+            }
+            // The same text update is usually queued for many viewers, group them to encode it once
+            for (PacketWrapper<?> packet : metadata) {
+                metadataGroups.computeIfAbsent(packet, p -> new ArrayList<>()).add(queue.viewer);
+            }
+        }
+        metadataGroups.forEach((packet, viewers) -> dispatch(() -> writeBroadcast(viewers, packet)));
+    }
+
+    private ViewerQueue queue(Player viewer) {
+        return queues.computeIfAbsent(viewer.getUniqueId(), id -> new ViewerQueue(viewer));
+    }
+
+    // Write out the queued packets (e.g. the destroys on shutdown) before stopping the writer thread
+    public void shutdown() {
+        if (fanOut == null) return;
+        fanOut.shutdown();
+        try {
+            if (!fanOut.awaitTermination(1, TimeUnit.SECONDS)) {
+                fanOut.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            fanOut.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Spawn, metadata and passenger packets for a whole tag (one Text Display per line, bottom-up)
+    public List<PacketWrapper<?>> spawnPackets(int ownerEntityId, int[] lineEntityIds, List<Component> linesBottomUp,
+                                               Location location, float viewRange, double lineSpacing) {
+        return spawnPackets(ownerEntityId, 0, lineEntityIds, linesBottomUp, location, viewRange, lineSpacing);
+    }
+
+    // Spawn packets for lines starting at line firstLine of a tag, chained on top of parentEntityId
+    // (the owner for a whole tag, the current top line when lines are added to a live tag)
+    public List<PacketWrapper<?>> spawnPackets(int parentEntityId, int firstLine, int[] lineEntityIds, List<Component> linesBottomUp,
+                                               Location location, float viewRange, double lineSpacing) {
+        List<PacketWrapper<?>> packets = new ArrayList<>(lineEntityIds.length * 3);
+        for (int i = 0; i < lineEntityIds.length; i++) {
+            int lineEntityId = lineEntityIds[i];
+
+            WrapperPlayServerSpawnEntity spawnPacket = new WrapperPlayServerSpawnEntity(
+                    lineEntityId,
+                    EntityIdPool.uuidOf(lineEntityId), // stable, a respawn replaces the client's copy
+                    EntityTypes.TEXT_DISPLAY,
+                    location,
+                    0f, // yaw
+                    0,  // data
+                    new Vector3d(0, 0, 0) // velocity
+            );
+
+            // Add metadata to the Text Display, see protocol info here: https://minecraft.wiki/w/Java_Edition_protocol/Entity_metadata#Text_Display
+            List<EntityData<?>> metadata = new ArrayList<>();
+
+            // Display entity flags: enable transformations + centered billboard so it faces viewers
+            metadata.add(new EntityData<>(15, EntityDataTypes.BYTE, (byte) 0x03));
+
+            // View distance
+            metadata.add(new EntityData<>(17, EntityDataTypes.FLOAT, viewRange));
+
+            // Apply per-line vertical translation so lines have spacing while riding each other.
+            // Translation is in world units (blocks). Bottom line = 0, next = spacing, etc.
+            float yOffset = (float) ((firstLine + i + 1) * lineSpacing);
+            metadata.add(new EntityData<>(11, EntityDataTypes.VECTOR3F, new Vector3f(0f, yOffset, 0f)));
+
+            // Set the text content of this line (each line is its own display)
+            metadata.add(new EntityData<>(23, EntityDataTypes.ADV_COMPONENT, linesBottomUp.get(i)));
+
+            // Set background color to fully transparent (optional)
+            // metadata.add(new EntityData<>(25, EntityDataTypes.INT, 0));
+
+            packets.add(spawnPacket);
+            packets.add(new WrapperPlayServerEntityMetadata(lineEntityId, metadata));
+        }
+
+        // Chain passengers: start from the parent, then each line rides the previous one (bottom-up)
+        int parentId = parentEntityId;
+        for (int lineEntityId : lineEntityIds) {
+            packets.add(new WrapperPlayServerSetPassengers(parentId, new int[]{lineEntityId}));
+            parentId = lineEntityId; // next line rides this line
+        }
+        return packets;
+    }
+
+    // Spawn, metadata and passenger packets for a tag rendered into one Text Display (single entity mode).
+    // The text grows upwards from the bottom line, which sits where the first line entity would.
+    public List<PacketWrapper<?>> singleSpawnPackets(int ownerEntityId, int entityId, Component text, Location location,
+                                                     float viewRange, double lineSpacing, int lineWidth) {
+        List<PacketWrapper<?>> packets = new ArrayList<>(3);
+        packets.add(new WrapperPlayServerSpawnEntity(
+                entityId,
+                EntityIdPool.uuidOf(entityId),
+                EntityTypes.TEXT_DISPLAY,
+                location,
+                0f, // yaw
+                0,  // data
+                new Vector3d(0, 0, 0) // velocity
+        ));
+
+        List<EntityData<?>> metadata = new ArrayList<>();
+        metadata.add(new EntityData<>(15, EntityDataTypes.BYTE, (byte) 0x03));
+        metadata.add(new EntityData<>(17, EntityDataTypes.FLOAT, viewRange));
+        metadata.add(new EntityData<>(11, EntityDataTypes.VECTOR3F, new Vector3f(0f, (float) lineSpacing, 0f)));
+        // Line width (index 24), lines wider than this wrap
+        metadata.add(new EntityData<>(24, EntityDataTypes.INT, lineWidth));
+        metadata.add(new EntityData<>(23, EntityDataTypes.ADV_COMPONENT, text));
+        packets.add(new WrapperPlayServerEntityMetadata(entityId, metadata));
+
+        packets.add(new WrapperPlayServerSetPassengers(ownerEntityId, new int[]{entityId}));
+        return packets;
+    }
+
+    // View range (index 17), vertical translation (index 11) and line width (index 24, only if > 0) of a live line,
+    // after view_distance, line_spacing or the line width changed
+    public WrapperPlayServerEntityMetadata layoutMetadata(int entityId, int line, float viewRange, double lineSpacing, int lineWidth) {
+        List<EntityData<?>> metadata = new ArrayList<>(3);
+        metadata.add(new EntityData<>(17, EntityDataTypes.FLOAT, viewRange));
+        metadata.add(new EntityData<>(11, EntityDataTypes.VECTOR3F, new Vector3f(0f, (float) ((line + 1) * lineSpacing), 0f)));
+        if (lineWidth > 0) {
+            metadata.add(new EntityData<>(24, EntityDataTypes.INT, lineWidth));
+        }
+        return new WrapperPlayServerEntityMetadata(entityId, metadata);
+    }
+
+    // Text-only metadata update for one line (index 23)
+    public WrapperPlayServerEntityMetadata textMetadata(int entityId, Component text) {
+        List<EntityData<?>> metadata = new ArrayList<>(1);
+        metadata.add(new EntityData<>(23, EntityDataTypes.ADV_COMPONENT, text));
+        return new WrapperPlayServerEntityMetadata(entityId, metadata);
+    }
+
+    public void send(Player viewer, PacketWrapper<?> packet) {
+        dispatch(() -> write(viewer, packet));
+    }
+
+    private void write(Player viewer, PacketWrapper<?> packet) {
+        synchronized (packet) {
+            PacketEvents.getAPI().getPlayerManager().sendPacket(viewer, packet);
+        }
+        count(packet, 1);
+    }
+
+    // Serialize the packet once per client version and write the same buffer to every viewer's channel
+    public void broadcast(List<Player> viewers, PacketWrapper<?> packet) {
+        if (viewers.isEmpty()) return;
+        if (viewerBudget <= 0 || !(packet instanceof WrapperPlayServerEntityMetadata metadata)) {
+            dispatch(() -> writeBroadcast(viewers, packet));
+            return;
+        }
+        // Viewers with room left this tick get it now, the others queue it (replacing an older update of the entity)
+        List<Player> now = new ArrayList<>(viewers.size());
+        for (Player viewer : viewers) {
+            if (queue(viewer).offerMetadata(metadata.getEntityId(), packet, tick, viewerBudget)) {
+                now.add(viewer);
+            }
+        }
+        if (!now.isEmpty()) {
+            dispatch(() -> writeBroadcast(now, packet));
+        }
+    }
+
+    private void writeBroadcast(List<Player> viewers, PacketWrapper<?> packet) {
+        if (viewers.size() == 1 || broadcastEncodingFailed) {
+            for (Player viewer : viewers) {
+                write(viewer, packet);
+            }
+            return;
+        }
+
+        Map<ClientVersion, List<User>> usersByVersion = new HashMap<>();
+        for (Player viewer : viewers) {
+            User user = PacketEvents.getAPI().getPlayerManager().getUser(viewer);
+            if (user == null) continue;
+            usersByVersion.computeIfAbsent(user.getClientVersion(), version -> new ArrayList<>()).add(user);
+        }
+
+        for (List<User> users : usersByVersion.values()) {
+            count(packet, users.size());
+            if (broadcastEncodingFailed) {
+                users.forEach(user -> resend(user, packet));
+                continue;
+            }
+            try {
+                writeShared(users, packet);
+            } catch (Exception e) {
+                broadcastEncodingFailed = true;
+                logger.warning("Shared packet encoding failed, falling back to per-viewer encoding: " + e.getMessage());
+                users.forEach(user -> resend(user, packet));
+            }
+        }
+    }
+
+    private void writeShared(List<User> users, PacketWrapper<?> packet) {
+        // Writes that fail before the shared buffer is released are resent after it, the wrapper holds that buffer
+        List<User> failedInline = new ArrayList<>(0);
+        synchronized (packet) {
+            // Encode against the first channel of this version group, every other user gets a retained duplicate
+            packet.prepareForSend(users.get(0).getChannel(), true);
+            Object buffer = packet.getBuffer();
+            try {
+                for (User user : users) {
+                    Object channel = user.getChannel();
+                    if (!ChannelHelper.isOpen(channel)) continue;
+                    // The pipeline encodes on the channel's event loop, a failure there only shows on the write future
+                    ((Channel) channel).writeAndFlush(ByteBufHelper.retainedDuplicate(buffer)).addListener(write -> {
+                        if (write.isSuccess() || !ChannelHelper.isOpen(channel)) return;
+                        sharedWriteFailed(write.cause());
+                        if (Thread.holdsLock(packet)) {
+                            failedInline.add(user);
+                        } else {
+                            resend(user, packet);
+                        }
+                    });
+                }
+            } finally {
+                ByteBufHelper.release(buffer);
+                packet.setBuffer(null);
+            }
+        }
+        failedInline.forEach(user -> resend(user, packet));
+    }
+
+    private void sharedWriteFailed(Throwable cause) {
+        if (broadcastEncodingFailed) return;
+        broadcastEncodingFailed = true;
+        logger.warning("Shared packet write failed, falling back to per-viewer encoding: " + cause);
+    }
+
+    // Encode the packet for this viewer alone, event loops of several viewers may resend the same wrapper at once
+    private void resend(User user, PacketWrapper<?> packet) {
+        synchronized (packet) {
+            user.sendPacket(packet);
+        }
+    }
+
+    // Destroy all given entities with a single packet
+    public void destroy(Player viewer, int[] entityIds) {
+        if (entityIds.length == 0) return;
+        WrapperPlayServerDestroyEntities packet = new WrapperPlayServerDestroyEntities(entityIds);
+        if (viewerBudget <= 0) {
+            send(viewer, packet);
+            return;
+        }
+        // Queued text updates of destroyed entities are pointless now
+        if (queue(viewer).offerUrgent(List.of(packet), entityIds, tick, viewerBudget)) {
+            send(viewer, packet);
+        }
+    }
+
+    // Write the packets in one bundle so the client applies them in the same tick, then flush once
+    public void sendBundle(Player viewer, List<PacketWrapper<?>> packets) {
+        if (packets.isEmpty()) return;
+        if (viewerBudget > 0) {
+            // A spawn carries the full text, queued text updates of the spawned entities are superseded
+            int[] spawned = packets.stream()
+                    .filter(packet -> packet instanceof WrapperPlayServerSpawnEntity)
+                    .mapToInt(packet -> ((WrapperPlayServerSpawnEntity) packet).getEntityId())
+                    .toArray();
+            if (!queue(viewer).offerUrgent(packets, spawned, tick, viewerBudget)) return;
+        }
+        dispatch(() -> writeBundle(viewer, packets));
+    }
+
+    private void writeBundle(Player viewer, List<PacketWrapper<?>> packets) {
+        User user = PacketEvents.getAPI().getPlayerManager().getUser(viewer);
+        if (user == null) return;
+
+        boolean bundle = packets.size() > 1 && supportsBundles(user);
+        if (bundle) user.writePacket(new WrapperPlayServerBundle());
+        for (PacketWrapper<?> packet : packets) {
+            user.writePacket(packet);
+            count(packet, 1);
+        }
+        if (bundle) {
+            user.writePacket(new WrapperPlayServerBundle());
+            metrics.increment(NametagMetrics.Counter.PACKETS_BUNDLE);
+        }
+        user.flushPackets();
+    }
+
+    private void count(PacketWrapper<?> packet, int viewers) {
+        NametagMetrics.Counter counter;
+        if (packet instanceof WrapperPlayServerEntityMetadata) {
+            counter = NametagMetrics.Counter.PACKETS_METADATA;
+        } else if (packet instanceof WrapperPlayServerSpawnEntity) {
+            counter = NametagMetrics.Counter.PACKETS_SPAWN;
+        } else if (packet instanceof WrapperPlayServerSetPassengers) {
+            counter = NametagMetrics.Counter.PACKETS_PASSENGERS;
+        } else if (packet instanceof WrapperPlayServerDestroyEntities) {
+            counter = NametagMetrics.Counter.PACKETS_DESTROY;
+        } else {
+            return;
+        }
+        metrics.add(counter, viewers);
+    }
+
+    private boolean supportsBundles(User user) {
+        // Bundle delimiters were added in 1.19.4, the same version that introduced Text Displays
+        return serverSupportsBundles && user.getClientVersion().isNewerThanOrEquals(ClientVersion.V_1_19_4);
+    }
+
+    // Outbound nametag packets of one viewer that did not fit into the budget of their tick
+    private static final class ViewerQueue {
+        private final Player viewer;
+        private final ArrayDeque<List<PacketWrapper<?>>> urgent = new ArrayDeque<>(); // spawns, destroys, passengers
+        private final LinkedHashMap<Integer, PacketWrapper<?>> metadata = new LinkedHashMap<>(); // entity id -> latest text
+        private long tick = Long.MIN_VALUE;
+        private int sent; // packets sent in the current tick
+
+        private ViewerQueue(Player viewer) {
+            this.viewer = viewer;
+        }
+
+        private void startTick(long tick) {
+            if (this.tick != tick) {
+                this.tick = tick;
+                this.sent = 0;
+            }
+        }
+
+        // True if the caller may send right away, otherwise the packets were queued
+        private synchronized boolean offerUrgent(List<PacketWrapper<?>> packets, int[] supersededEntities, long tick, int budget) {
+            startTick(tick);
+            for (int entityId : supersededEntities) {
+                metadata.remove(entityId);
+            }
+            if (urgent.isEmpty() && sent < budget) {
+                sent += packets.size();
+                return true;
+            }
+            urgent.add(packets);
+            return false;
+        }
+
+        private synchronized boolean offerMetadata(int entityId, PacketWrapper<?> packet, long tick, int budget) {
+            startTick(tick);
+            if (urgent.isEmpty() && metadata.isEmpty() && sent < budget) {
+                sent++;
+                return true;
+            }
+            // Superseded: the newer update replaces the queued one in the same place in line (put keeps the insertion
+            // order), so an entity that keeps changing is not pushed back behind the others
+            metadata.put(entityId, packet);
+            return false;
+        }
+
+        // Take what fits into this tick's budget, urgent packets first (always at least one entry so nothing stalls)
+        private synchronized void poll(long tick, int budget, List<List<PacketWrapper<?>>> urgentOut, List<PacketWrapper<?>> metadataOut) {
+            startTick(tick);
+            while (!urgent.isEmpty() && (sent < budget || (urgentOut.isEmpty() && sent == 0))) {
+                List<PacketWrapper<?>> packets = urgent.poll();
+                urgentOut.add(packets);
+                sent += packets.size();
+            }
+            Iterator<PacketWrapper<?>> iterator = metadata.values().iterator();
+            while (iterator.hasNext() && sent < budget) {
+                metadataOut.add(iterator.next());
+                iterator.remove();
+                sent++;
+            }
+        }
+    }
+}
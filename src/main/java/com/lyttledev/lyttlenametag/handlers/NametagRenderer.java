@@ -0,0 +1,576 @@
+package com.lyttledev.lyttlenametag.handlers;
+
+import com.lyttledev.lyttlenametag.types.ComponentInterner;
+import com.lyttledev.lyttlenametag.types.NametagMetrics;
+import com.lyttledev.lyttlenametag.types.NametagSettings;
+import com.lyttledev.lyttlenametag.types.NametagTemplate;
+import com.lyttledev.lyttlenametag.types.PlaceholderCache;
+import me.clip.placeholderapi.PlaceholderAPI;
+import net.kyori.adventure.text.Component;
+import net.kyori.adventure.text.JoinConfiguration;
+import net.kyori.adventure.text.minimessage.MiniMessage;
+import org.bukkit.Bukkit;
+import org.bukkit.Location;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Renders the compiled nametag template, only re-parsing lines whose resolved text actually changed.
+// Rendering is split into prepare (main thread), resolveAsync (any thread), complete (any thread) and apply (main thread),
+// so thread-safe placeholders can be resolved off the main thread.
+// Relational lines (%rel_...%) are rendered on top of the owner's render, once per viewer relation group.
+// Each compile publishes a new immutable snapshot, a render keeps using the snapshot it started with.
+public class NametagRenderer {
+    private static final MiniMessage MINI_MESSAGE = MiniMessage.miniMessage();
+    public static final Component EMPTY_LINE = Component.empty(); // shared by every hidden or padded line
+    public static final long EMPTY_FINGERPRINT = NametagTemplate.fingerprint("");
+
+    private final NametagMetrics metrics;
+    private final double nametagSpawnHeight;
+    private final boolean placeholderApiEnabled;
+    private volatile Compiled compiled; // replaced as a whole on reload
+    private int version; // compile counter, render caches of another version are stale
+    private final ComponentInterner interner = new ComponentInterner(4096); // parsed lines shared between players
+    private final PlaceholderCache placeholderCache = new PlaceholderCache(8192); // shared by every nametag
+    private final Map<UUID, RelationKey> relationKeys = new ConcurrentHashMap<>(); // viewer -> cached relation key
+    private volatile double stretch = 1.0D; // adaptive interval: every refresh period is multiplied by this under load
+
+    public NametagRenderer(NametagMetrics metrics, double nametagSpawnHeight) {
+        this.metrics = metrics;
+        this.nametagSpawnHeight = nametagSpawnHeight;
+        this.placeholderApiEnabled = Bukkit.getPluginManager().isPluginEnabled("PlaceholderAPI");
+    }
+
+    public synchronized void compile(NametagSettings settings) {
+        NametagTemplate template = NametagTemplate.compile(settings.nametag());
+        Compiled next = new Compiled(++version, template, settings.relationKey());
+        for (int i = 0; i < template.size(); i++) {
+            NametagTemplate.Line line = template.getLine(i);
+            next.staticFingerprints[i] = NametagTemplate.fingerprint(line.getRaw());
+            // Static lines are plain MiniMessage, parsed once per compile
+            if (!line.isDynamic()) {
+                next.staticLines[i] = MINI_MESSAGE.deserialize(line.getRaw());
+            }
+        }
+        next.tokenPeriod = Math.max(1, settings.intervalTicks());
+        next.basePeriod = next.tokenPeriod;
+        for (NametagTemplate.Token token : template.getUsedTokens()) {
+            switch (token) {
+                case WORLD, X, Y, Z -> next.positionTokens = true;
+                case DISPLAYNAME -> next.pollTokens = true;
+                case PLAYER -> {
+                    // Never changes during a session
+                }
+            }
+        }
+        for (int slot = 0; slot < next.slotPeriods.length; slot++) {
+            NametagTemplate.Segment placeholder = template.getPlaceholder(slot);
+            int period = refreshPeriod(placeholder.getIdentifier(), next.tokenPeriod, settings.refreshTiers());
+            next.slotScopes[slot] = scope(placeholder, settings.globalPlaceholders());
+            if (placeholder.isRelational()) {
+                // Kept verbatim in the owner's render, the viewer groups resolve them on their own tier
+                if (period > 0) {
+                    next.relationalPeriod = next.relationalPeriod > 0 ? Math.min(next.relationalPeriod, period) : period;
+                    next.basePeriod = Math.min(next.basePeriod, period);
+                }
+                continue;
+            }
+            next.slotPeriods[slot] = period;
+            if (period > 0) {
+                next.basePeriod = Math.min(next.basePeriod, period);
+            }
+            next.asyncSlots[slot] = settings.asyncPlaceholders()
+                    && !isSyncOnly(placeholder.getIdentifier(), settings.syncPlaceholders());
+        }
+
+        for (int i = 0; i < template.size(); i++) {
+            NametagTemplate.Line line = template.getLine(i);
+            if (line.isRelational()) {
+                next.relationalMask |= 1L << Math.min(i, 63);
+            }
+            for (NametagTemplate.Segment segment : line.getSegments()) {
+                if (segment.getToken() == NametagTemplate.Token.PLAYER || segment.getToken() == NametagTemplate.Token.DISPLAYNAME) {
+                    next.nameLineMask |= 1L << Math.min(i, 63);
+                }
+            }
+        }
+        // Without a <PLAYER>/<DISPLAYNAME> line the top line stands in for the name
+        if (next.nameLineMask == 0L && template.size() > 0) {
+            next.nameLineMask = 1L << Math.min(template.size() - 1, 63);
+        }
+
+        interner.clear();
+        placeholderCache.clear();
+        relationKeys.clear();
+        this.compiled = next;
+    }
+
+    // The most specific (longest) configured prefix wins, unlisted placeholders use the default interval
+    private int refreshPeriod(String identifier, int defaultPeriod, Map<String, Integer> refreshTiers) {
+        int period = defaultPeriod;
+        int matchedLength = -1;
+        for (Map.Entry<String, Integer> tier : refreshTiers.entrySet()) {
+            String prefix = tier.getKey();
+            if (identifier.startsWith(prefix) && prefix.length() > matchedLength) {
+                period = Math.max(0, tier.getValue());
+                matchedLength = prefix.length();
+            }
+        }
+        return period;
+    }
+
+    // Global placeholders give the same value for every player, unless a built-in token makes them player specific
+    private PlaceholderCache.Scope scope(NametagTemplate.Segment placeholder, List<String> globalPlaceholders) {
+        if (placeholder.isRelational()) return PlaceholderCache.Scope.RELATIONAL;
+        if (placeholder.getText().indexOf('<') < 0) {
+            for (String prefix : globalPlaceholders) {
+                if (placeholder.getIdentifier().startsWith(prefix)) return PlaceholderCache.Scope.GLOBAL;
+            }
+        }
+        return PlaceholderCache.Scope.PLAYER;
+    }
+
+    private boolean isSyncOnly(String identifier, List<String> syncPlaceholders) {
+        for (String prefix : syncPlaceholders) {
+            if (identifier.startsWith(prefix)) return true;
+        }
+        return false;
+    }
+
+    // Stretch all refresh periods (1 = as configured), takes effect with the next due check
+    public void setStretch(double stretch) {
+        this.stretch = Math.max(1.0D, stretch);
+    }
+
+    // Refresh period after the adaptive stretch, 0 (only on join/reload) stays 0
+    private int stretched(int period) {
+        return period <= 0 ? period : (int) Math.min(Integer.MAX_VALUE, Math.round(period * stretch));
+    }
+
+    public NametagTemplate getTemplate() {
+        return compiled.template;
+    }
+
+    public int getLineCount() {
+        return compiled.template.size();
+    }
+
+    public int getBasePeriod() {
+        return compiled.basePeriod;
+    }
+
+    // Whether a block position or world change of the owner must re-render the tag
+    public boolean usesPositionTokens() {
+        return compiled.positionTokens;
+    }
+
+    // Bit i set = line i (bottom-up) must be sent per viewer group instead of to every viewer
+    public long getRelationalMask() {
+        return compiled.relationalMask;
+    }
+
+    // Bit i set = line i (bottom-up) shows the player's name
+    public long getNameLineMask() {
+        return compiled.nameLineMask;
+    }
+
+    // Whether any token or placeholder of this player's tag is due for a refresh at the given tick
+    public boolean isDue(NametagHandler.NametagEntity entity, long tick) {
+        Compiled c = compiled;
+        if (!cacheMatches(c, entity)) return true;
+        if (!c.template.getUsedTokens().isEmpty() && tokensDue(c, entity, tick)) return true;
+        for (int slot = 0; slot < c.slotPeriods.length; slot++) {
+            if (slotDue(c, entity, slot, tick)) return true;
+        }
+        return isRelationalDue(entity, tick);
+    }
+
+    // Whether the relational placeholders of this player's tag are due for a refresh in the viewer groups
+    public boolean isRelationalDue(NametagHandler.NametagEntity entity, long tick) {
+        Compiled c = compiled;
+        if (c.relationalMask == 0L || c.relationalPeriod <= 0) return false;
+        long resolvedAt = entity.getRelationalResolvedAt();
+        return resolvedAt < 0 || tick - resolvedAt >= stretched(c.relationalPeriod);
+    }
+
+    // Key of the viewer's relation group, viewers with the same key share the relational lines of every owner.
+    // Resolved with the viewer as context and cached for the default interval.
+    public String relationKey(Player viewer, long tick) {
+        Compiled c = compiled;
+        if (c.relationKeyPlaceholder.isEmpty() || !placeholderApiEnabled) return viewer.getUniqueId().toString();
+        RelationKey cached = relationKeys.get(viewer.getUniqueId());
+        if (cached != null && tick - cached.resolvedAt() < stretched(c.tokenPeriod)) return cached.key();
+        String key = PlaceholderAPI.setPlaceholders(viewer, c.relationKeyPlaceholder);
+        metrics.increment(NametagMetrics.Counter.PLACEHOLDERS_RESOLVED);
+        relationKeys.put(viewer.getUniqueId(), new RelationKey(key, tick));
+        return key;
+    }
+
+    public void forgetViewer(UUID viewer) {
+        relationKeys.remove(viewer);
+    }
+
+    // The player left, their cached placeholder values must not outlive the session
+    public void forgetPlayer(UUID player) {
+        placeholderCache.evict(player);
+    }
+
+    // Render the relational lines of the owner for the viewer's group (the viewer stands in for the whole group).
+    // Returns the bits of the lines whose component changed since the group's previous render.
+    public long renderRelational(Player owner, NametagHandler.NametagEntity entity, Player viewer, String key, long tick) {
+        Compiled c = compiled;
+        if (c.relationalMask == 0L) return 0L;
+        NametagHandler.NametagEntity.RelationView view = entity.getRelationViews()
+                .computeIfAbsent(key, k -> new NametagHandler.NametagEntity.RelationView(c.template.size()));
+        String[] ownerSources = entity.getSources();
+        long changed = 0L;
+        synchronized (view) {
+            boolean due = view.resolvedAt < 0 || (c.relationalPeriod > 0 && tick - view.resolvedAt >= stretched(c.relationalPeriod));
+            for (int i = 0; i < c.template.size() && i < ownerSources.length && i < view.sources.length; i++) {
+                NametagTemplate.Line line = c.template.getLine(i);
+                String source = ownerSources[i];
+                if (!line.isRelational() || source == null) continue;
+                // Re-resolve when the owner's part of the line changed or the relational tier is due
+                if (!due && source.equals(view.sources[i])) continue;
+                view.sources[i] = source;
+                String text = placeholderApiEnabled ? PlaceholderAPI.setRelationalPlaceholders(viewer, owner, source) : source;
+                metrics.increment(NametagMetrics.Counter.PLACEHOLDERS_RESOLVED);
+                if (view.rendered[i] == null || !text.equals(view.resolved[i])) {
+                    view.resolved[i] = text;
+                    view.rendered[i] = parse(text);
+                    changed |= 1L << Math.min(i, 63);
+                }
+            }
+            if (due) {
+                view.resolvedAt = tick;
+            }
+        }
+        return changed;
+    }
+
+    // The group's relational line, null if the line is not relational or not rendered yet
+    public Component relationalLine(NametagHandler.NametagEntity entity, String key, int line) {
+        NametagHandler.NametagEntity.RelationView view = entity.getRelationViews().get(key);
+        if (view == null || line >= view.rendered.length) return null;
+        synchronized (view) {
+            return view.rendered[line];
+        }
+    }
+
+    // The owner's lines as the viewer sees them: the shared lines with the relational lines of the viewer's group
+    public List<Component> linesForViewer(Player owner, NametagHandler.NametagEntity entity, Player viewer,
+                                          List<Component> shared, long tick) {
+        Compiled c = compiled;
+        if (c.relationalMask == 0L) return shared;
+        String key = relationKey(viewer, tick);
+        renderRelational(owner, entity, viewer, key, tick);
+        List<Component> lines = new ArrayList<>(shared);
+        for (int i = 0; i < lines.size() && i < c.template.size(); i++) {
+            if (!c.template.getLine(i).isRelational()) continue;
+            Component relational = relationalLine(entity, key, i);
+            if (relational != null) {
+                lines.set(i, relational);
+            }
+        }
+        return lines;
+    }
+
+    // Whether a due placeholder of this player's tag may be resolved off the main thread
+    public boolean hasAsyncWork(NametagHandler.NametagEntity entity, long tick) {
+        Compiled c = compiled;
+        if (!cacheMatches(c, entity)) return false;
+        for (int slot = 0; slot < c.slotPeriods.length; slot++) {
+            if (c.asyncSlots[slot] && slotDue(c, entity, slot, tick)) return true;
+        }
+        return false;
+    }
+
+    // Synchronous render: all lines bottom-up, only resolving placeholders whose tier is due.
+    public List<Component> renderLinesBottomUp(Player player, NametagHandler.NametagEntity entity, long tick) {
+        RenderJob job = prepare(player, entity, tick, true);
+        resolveAsync(job);
+        List<Component> lines = complete(job);
+        apply(job, entity);
+        return lines;
+    }
+
+    // Like renderLinesBottomUp, but keeps the cached value of due async placeholders for the next async cycle.
+    public List<Component> renderCachedLinesBottomUp(Player player, NametagHandler.NametagEntity entity, long tick) {
+        RenderJob job = prepare(player, entity, tick, false);
+        // Only async placeholders without any cached value are pending here
+        resolveAsync(job);
+        List<Component> lines = complete(job);
+        apply(job, entity);
+        return lines;
+    }
+
+    // Main thread: snapshot the tokens and resolve main-thread-only placeholders that are due.
+    public RenderJob prepare(Player player, NametagHandler.NametagEntity entity, long tick, boolean resolveAsyncSlots) {
+        Compiled c = compiled;
+        if (!cacheMatches(c, entity)) {
+            // First render since a reload, the cached values belong to the previous template
+            entity.resetRenderCache(c.template.size(), c.slotPeriods.length, c.version);
+        }
+        RenderJob job = new RenderJob(c, player, entity, tick);
+
+        boolean tokensDue = tokensDue(c, entity, tick);
+        boolean anyLineDue = false;
+        for (int i = 0; i < c.template.size(); i++) {
+            NametagTemplate.Line line = c.template.getLine(i);
+            job.linesDue[i] = line.isDynamic() && (job.rendered[i] == null || lineDue(c, line, entity, tick, tokensDue));
+            anyLineDue |= job.linesDue[i];
+        }
+        if (anyLineDue) {
+            job.tokens = snapshotTokens(c, player);
+            job.tokensDue = tokensDue;
+        }
+
+        List<Integer> pending = new ArrayList<>();
+        for (int slot = 0; slot < c.slotPeriods.length; slot++) {
+            if (!slotDue(c, entity, slot, tick)) continue;
+            if (!c.asyncSlots[slot]) {
+                resolveSlot(job, slot);
+            } else if (resolveAsyncSlots || job.values[slot] == null) {
+                pending.add(slot);
+            }
+        }
+        job.pendingSlots = pending.stream().mapToInt(Integer::intValue).toArray();
+        return job;
+    }
+
+    // Any thread: resolve the placeholders that are safe to run off the main thread.
+    public void resolveAsync(RenderJob job) {
+        for (int slot : job.pendingSlots) {
+            resolveSlot(job, slot);
+        }
+    }
+
+    // Any thread: build the bottom-up lines from the resolved values. A line is only resolved into text and
+    // re-parsed when its fingerprint (hashed straight from the resolved values) changed.
+    public List<Component> complete(RenderJob job) {
+        Compiled c = job.compiled;
+        List<Component> bottomUp = new ArrayList<>(c.template.size());
+        for (int i = 0; i < c.template.size(); i++) {
+            NametagTemplate.Line line = c.template.getLine(i);
+            if (!line.isDynamic()) {
+                bottomUp.add(c.staticLines[i]);
+                job.fingerprints[i] = c.staticFingerprints[i];
+                continue;
+            }
+            if (job.linesDue[i]) {
+                long fingerprint = line.fingerprint(job);
+                if (job.rendered[i] == null || fingerprint != job.fingerprints[i]) {
+                    String source = line.resolve(job);
+                    job.sources[i] = source;
+                    job.fingerprints[i] = fingerprint;
+                    job.rendered[i] = parse(source);
+                }
+            }
+            bottomUp.add(job.rendered[i]);
+        }
+        return bottomUp;
+    }
+
+    // Single entity mode: the bottom-up lines as one text, top line first. A hidden tag (only empty lines) stays empty.
+    public static Component joinLines(List<Component> linesBottomUp) {
+        boolean empty = true;
+        for (Component line : linesBottomUp) {
+            if (line != EMPTY_LINE) {
+                empty = false;
+                break;
+            }
+        }
+        if (empty) return EMPTY_LINE;
+        List<Component> topDown = new ArrayList<>(linesBottomUp);
+        Collections.reverse(topDown);
+        return Component.join(JoinConfiguration.newlines(), topDown);
+    }
+
+    // Placeholders are already resolved here: MiniMessage only, so a value containing %...% is never expanded again
+    // (and no placeholder runs on the async worker). The same text parses the same for everyone, so lines are interned.
+    private Component parse(String source) {
+        return interner.intern(source, MINI_MESSAGE::deserialize);
+    }
+
+    // Main thread: write the job's results back into the player's cache; false if the template changed meanwhile,
+    // or another render was applied since this one was prepared (its copies would overwrite the newer values)
+    public boolean apply(RenderJob job, NametagHandler.NametagEntity entity) {
+        if (job.compiled.version != entity.getTemplateVersion() || job.compiled != compiled) return false;
+        if (job.renderGeneration != entity.getRenderGeneration()) return false;
+        entity.nextRenderGeneration();
+        System.arraycopy(job.sources, 0, entity.getSources(), 0, job.sources.length);
+        System.arraycopy(job.rendered, 0, entity.getRendered(), 0, job.rendered.length);
+        System.arraycopy(job.fingerprints, 0, entity.getFingerprints(), 0, job.fingerprints.length);
+        System.arraycopy(job.values, 0, entity.getPlaceholderValues(), 0, job.values.length);
+        System.arraycopy(job.resolvedAt, 0, entity.getPlaceholderResolvedAt(), 0, job.resolvedAt.length);
+        if (job.tokensDue) {
+            entity.setTokensResolvedAt(job.tick);
+            entity.setTokenChangesResolved(job.tokenChanges);
+        }
+        return true;
+    }
+
+    private boolean cacheMatches(Compiled c, NametagHandler.NametagEntity entity) {
+        return entity.getTemplateVersion() == c.version;
+    }
+
+    private boolean lineDue(Compiled c, NametagTemplate.Line line, NametagHandler.NametagEntity entity, long tick, boolean tokensDue) {
+        if (tokensDue && line.usesTokens()) return true;
+        for (NametagTemplate.Segment segment : line.getSegments()) {
+            if (segment.getType() == NametagTemplate.SegmentType.PLACEHOLDER && slotDue(c, entity, segment.getSlot(), tick)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Position and world tokens are invalidated by the owner's events, only the display name (no event) is polled
+    private boolean tokensDue(Compiled c, NametagHandler.NametagEntity entity, long tick) {
+        long resolvedAt = entity.getTokensResolvedAt();
+        if (resolvedAt < 0 || entity.getTokenChanges() != entity.getTokenChangesResolved()) return true;
+        return c.pollTokens && tick - resolvedAt >= stretched(c.tokenPeriod);
+    }
+
+    private boolean slotDue(Compiled c, NametagHandler.NametagEntity entity, int slot, long tick) {
+        if (entity.getPlaceholderValues()[slot] == null) return true;
+        int period = stretched(c.slotPeriods[slot]);
+        return period > 0 && tick - entity.getPlaceholderResolvedAt()[slot] >= period;
+    }
+
+    // Built-in token values only touch the Bukkit API, so they are always captured on the main thread
+    private String[] snapshotTokens(Compiled c, Player player) {
+        String[] tokens = new String[NametagTemplate.Token.values().length];
+        Location baseLoc = null;
+        for (NametagTemplate.Token token : c.template.getUsedTokens()) {
+            if (baseLoc == null && token != NametagTemplate.Token.PLAYER && token != NametagTemplate.Token.DISPLAYNAME) {
+                baseLoc = player.getLocation().clone();
+                baseLoc.setY(baseLoc.getY() + nametagSpawnHeight);
+            }
+            tokens[token.ordinal()] = switch (token) {
+                case PLAYER -> player.getName();
+                case DISPLAYNAME -> player.displayName() != null ? player.displayName().toString() : player.getName();
+                case WORLD -> baseLoc.getWorld().getName();
+                case X -> String.valueOf(baseLoc.getBlockX());
+                case Y -> String.valueOf(baseLoc.getBlockY());
+                case Z -> String.valueOf(baseLoc.getBlockZ());
+            };
+        }
+        return tokens;
+    }
+
+    private void resolveSlot(RenderJob job, int slot) {
+        Compiled c = job.compiled;
+        String placeholder = c.template.getPlaceholder(slot).getText();
+        if (placeholder.indexOf('<') >= 0) {
+            // Placeholder arguments may embed built-in tokens, e.g. %some_placeholder_<PLAYER>%
+            String[] tokens = job.tokens != null ? job.tokens : snapshotTokens(c, job.player);
+            for (NametagTemplate.Token token : c.template.getUsedTokens()) {
+                placeholder = placeholder.replace(token.key(), tokens[token.ordinal()]);
+            }
+        }
+        job.resolvedAt[slot] = job.tick;
+        if (c.template.getPlaceholder(slot).isRelational()) {
+            // Left in the owner's text, renderRelational resolves it for each viewer group
+            job.values[slot] = placeholder;
+            return;
+        }
+        // Global values are shared by all players, per-player ones by every slot with the same placeholder
+        UUID cacheOwner = c.slotScopes[slot] == PlaceholderCache.Scope.GLOBAL ? null : job.player.getUniqueId();
+        String cached = placeholderCache.get(cacheOwner, placeholder, job.tick);
+        if (cached != null) {
+            job.values[slot] = cached;
+            metrics.increment(NametagMetrics.Counter.PLACEHOLDER_CACHE_HITS);
+            return;
+        }
+        String value = placeholderApiEnabled ? PlaceholderAPI.setPlaceholders(job.player, placeholder) : placeholder;
+        // Valid until the slot's tier is due again, "join" placeholders until the next reload
+        int period = stretched(c.slotPeriods[slot]);
+        placeholderCache.put(cacheOwner, placeholder, value, job.tick, period > 0 ? period : Long.MAX_VALUE);
+        job.values[slot] = value;
+        metrics.increment(NametagMetrics.Counter.PLACEHOLDERS_RESOLVED);
+    }
+
+    private record RelationKey(String key, long resolvedAt) {
+    }
+
+    // Everything derived from one compile of the template, never modified once published
+    private static final class Compiled {
+        final int version;
+        final NametagTemplate template;
+        final Component[] staticLines; // bottom-up, parsed on compile, null for dynamic lines
+        final long[] staticFingerprints; // bottom-up fingerprint of every static line
+        final int[] slotPeriods; // refresh period per placeholder slot (in ticks), 0 = only on join/reload
+        final boolean[] asyncSlots; // placeholder slots that are safe to resolve off the main thread
+        final PlaceholderCache.Scope[] slotScopes; // global, per-player or relational, per placeholder slot
+        final String relationKeyPlaceholder; // resolved per viewer to group viewers, empty = one group per viewer
+        int tokenPeriod; // built-in tokens refresh at the default interval (in ticks)
+        int basePeriod; // shortest refresh period, drives the update timer
+        long relationalMask; // bit i set = line i (bottom-up) contains relational placeholders
+        long nameLineMask; // lines that far viewers still receive (level of detail)
+        int relationalPeriod; // refresh period of the relational placeholders (in ticks), 0 = only when the line changes
+        boolean positionTokens; // uses <WORLD>, <X>, <Y> or <Z>
+        boolean pollTokens; // uses <DISPLAYNAME>, which has no change event
+
+        Compiled(int version, NametagTemplate template, String relationKeyPlaceholder) {
+            this.version = version;
+            this.template = template;
+            this.staticLines = new Component[template.size()];
+            this.staticFingerprints = new long[template.size()];
+            this.slotPeriods = new int[template.getPlaceholderCount()];
+            this.asyncSlots = new boolean[template.getPlaceholderCount()];
+            this.slotScopes = new PlaceholderCache.Scope[template.getPlaceholderCount()];
+            this.relationKeyPlaceholder = relationKeyPlaceholder != null ? relationKeyPlaceholder : "";
+        }
+    }
+
+    // Per-player render state that can be handed to a worker thread; the entity is only touched again in apply
+    public static final class RenderJob implements NametagTemplate.Resolver {
+        private final Compiled compiled;
+        private final Player player;
+        private final long tick;
+        private final String[] sources;
+        private final Component[] rendered;
+        private final long[] fingerprints;
+        private final String[] values;
+        private final long[] resolvedAt;
+        private final boolean[] linesDue;
+        private String[] tokens;
+        private boolean tokensDue;
+        private final int tokenChanges; // owner's token input changes seen by this render
+        private final int renderGeneration; // entity's applied renders when this one was prepared
+        private int[] pendingSlots = new int[0];
+
+        private RenderJob(Compiled compiled, Player player, NametagHandler.NametagEntity entity, long tick) {
+            this.compiled = compiled;
+            this.player = player;
+            this.tick = tick;
+            this.tokenChanges = entity.getTokenChanges();
+            this.renderGeneration = entity.getRenderGeneration();
+            this.sources = entity.getSources().clone();
+            this.rendered = entity.getRendered().clone();
+            this.fingerprints = entity.getFingerprints().clone();
+            this.values = entity.getPlaceholderValues().clone();
+            this.resolvedAt = entity.getPlaceholderResolvedAt().clone();
+            this.linesDue = new boolean[sources.length];
+        }
+
+        public boolean hasPendingSlots() {
+            return pendingSlots.length > 0;
+        }
+
+        @Override
+        public String token(NametagTemplate.Token token) {
+            return tokens[token.ordinal()];
+        }
+
+        @Override
+        public String placeholder(NametagTemplate.Segment placeholder) {
+            return values[placeholder.getSlot()];
+        }
+    }
+}
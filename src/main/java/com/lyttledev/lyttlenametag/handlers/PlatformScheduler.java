@@ -0,0 +1,93 @@
+package com.lyttledev.lyttlenametag.handlers;
+
+import com.lyttledev.lyttlenametag.LyttleNametag;
+import io.papermc.paper.threadedregions.scheduler.ScheduledTask;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Execution layer over Paper's region-aware schedulers. On Paper every task still runs on the main thread,
+// on Folia global work runs on the global region, per-player work on that player's entity scheduler.
+public class PlatformScheduler {
+    private static final boolean FOLIA = detectFolia();
+
+    private final LyttleNametag plugin;
+    private final AtomicLong tick = new AtomicLong(); // Folia has no single server tick, count global region ticks instead
+    private ScheduledTask tickCounter;
+
+    public PlatformScheduler(LyttleNametag plugin) {
+        this.plugin = plugin;
+        if (FOLIA) {
+            this.tickCounter = Bukkit.getGlobalRegionScheduler().runAtFixedRate(plugin, task -> tick.incrementAndGet(), 1L, 1L);
+        }
+    }
+
+    private static boolean detectFolia() {
+        try {
+            Class.forName("io.papermc.paper.threadedregions.RegionizedServer");
+            return true;
+        } catch (ClassNotFoundException e) {
+            return false;
+        }
+    }
+
+    public static boolean isFolia() {
+        return FOLIA;
+    }
+
+    public long currentTick() {
+        return FOLIA ? tick.get() : Bukkit.getCurrentTick();
+    }
+
+    // Global task every period ticks (main thread on Paper, global region on Folia)
+    public Task runTimer(Runnable task, long delay, long period) {
+        ScheduledTask scheduled = Bukkit.getGlobalRegionScheduler()
+                .runAtFixedRate(plugin, t -> task.run(), Math.max(1L, delay), Math.max(1L, period));
+        return scheduled::cancel;
+    }
+
+    public Task runLater(Runnable task, long delay) {
+        ScheduledTask scheduled = Bukkit.getGlobalRegionScheduler().runDelayed(plugin, t -> task.run(), Math.max(1L, delay));
+        return scheduled::cancel;
+    }
+
+    // Run on the thread that owns the player, dropped if the player is removed first
+    public void runForPlayer(Player player, Runnable task) {
+        player.getScheduler().run(plugin, t -> task.run(), null);
+    }
+
+    public void runForPlayerLater(Player player, Runnable task, long delay) {
+        player.getScheduler().runDelayed(plugin, t -> task.run(), null, Math.max(1L, delay));
+    }
+
+    // Run right away if the current thread owns the player, otherwise hand it to the player's scheduler
+    public void executeForPlayer(Player player, Runnable task) {
+        if (ownsPlayer(player)) {
+            task.run();
+        } else {
+            runForPlayer(player, task);
+        }
+    }
+
+    // Whether the player's state may be read and changed from the current thread (the main thread on Paper)
+    public boolean ownsPlayer(Player player) {
+        return Bukkit.isOwnedByCurrentRegion(player);
+    }
+
+    public void runAsync(Runnable task) {
+        Bukkit.getAsyncScheduler().runNow(plugin, t -> task.run());
+    }
+
+    public void shutdown() {
+        if (tickCounter != null) {
+            tickCounter.cancel();
+            tickCounter = null;
+        }
+    }
+
+    // Handle of a repeating or delayed task
+    public interface Task {
+        void cancel();
+    }
+}
@@ -0,0 +1,172 @@
+package com.lyttledev.lyttlenametag.handlers;
+
+import com.lyttledev.lyttlenametag.types.NametagMetrics;
+import com.lyttledev.lyttlenametag.types.PlayerSlots;
+import org.bukkit.Bukkit;
+import org.bukkit.entity.Player;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Runs per-player jobs every tick: players are sharded into round-robin buckets across each job's period,
+// and the work per tick stops once the time budget is used up. Leftover work rolls into the next tick.
+// On Folia the units are handed to each player's entity scheduler instead, so they run on the owning region thread.
+public class ShardedScheduler {
+    private final PlatformScheduler platform;
+    private final PlayerSlots playerSlots;
+    private final NametagMetrics metrics;
+    private final List<Job> jobs = new CopyOnWriteArrayList<>(); // may be replaced on reload while the tick task runs (Folia)
+    private long budgetNanos;
+    private volatile double stretch = 1.0D; // adaptive interval: job periods are multiplied by this under load
+    private final LongAdder spentNanos = new LongAdder(); // time spent in jobs since the last takeSpentNanos
+    private PlatformScheduler.Task task;
+
+    public ShardedScheduler(PlatformScheduler platform, PlayerSlots playerSlots, NametagMetrics metrics) {
+        this.platform = platform;
+        this.playerSlots = playerSlots;
+        this.metrics = metrics;
+    }
+
+    // Register a job that visits every online player once per period (in ticks), its time per tick is recorded under timer
+    public void addJob(NametagMetrics.Timer timer, int period, Consumer<Player> work) {
+        Job job = new Job(timer, Math.max(1, period), work, PlatformScheduler.isFolia() ? metrics : null);
+        job.stretch(stretch);
+        jobs.add(job);
+    }
+
+    // Visit every player less often (1 = the registered periods), players are re-bucketed from the next tick
+    public void setStretch(double stretch) {
+        this.stretch = Math.max(1.0D, stretch);
+        for (Job job : jobs) {
+            job.stretch(this.stretch);
+        }
+    }
+
+    // Time spent in the jobs since the previous call, on Folia summed over all region threads
+    public long takeSpentNanos() {
+        return spentNanos.sumThenReset();
+    }
+
+    public void clearJobs() {
+        jobs.clear();
+    }
+
+    public void start(double budgetMillis) {
+        stop();
+        this.budgetNanos = Math.max(0L, Math.round(budgetMillis * 1_000_000D));
+        this.task = platform.runTimer(() -> tick(platform.currentTick()), 1L, 1L);
+    }
+
+    public void stop() {
+        if (task != null) {
+            task.cancel();
+            task = null;
+        }
+    }
+
+    public boolean isRunning() {
+        return task != null;
+    }
+
+    private void tick(long tick) {
+        // Queue the players whose bucket comes up this tick
+        for (Player player : Bukkit.getOnlinePlayers()) {
+            int slot = playerSlots.find(player.getUniqueId());
+            if (slot < 0) continue; // quit, still listed until the end of the tick
+            for (Job job : jobs) {
+                int period = job.stretchedPeriod;
+                if (slot % period == tick % period) {
+                    job.enqueue(player.getUniqueId());
+                }
+            }
+        }
+
+        // Drain the queues round-robin until the budget runs out (at least one unit per tick so work never stalls)
+        long start = System.nanoTime();
+        boolean worked = true;
+        boolean first = true;
+        drain:
+        while (worked) {
+            worked = false;
+            for (Job job : jobs) {
+                if (!first && System.nanoTime() - start >= budgetNanos) break drain;
+                if (job.runNext(platform, spentNanos)) {
+                    worked = true;
+                    first = false;
+                }
+            }
+        }
+
+        // Only ticks in which a job actually ran count towards its timings
+        for (Job job : jobs) {
+            if (job.ran) {
+                metrics.record(job.timer, job.spentNanos);
+            }
+            job.ran = false;
+            job.spentNanos = 0L;
+        }
+    }
+
+    private static final class Job {
+        private final NametagMetrics.Timer timer;
+        private final int period;
+        private volatile int stretchedPeriod;
+        private final Consumer<Player> work;
+        private final NametagMetrics dispatchMetrics; // set when units are dispatched to entity schedulers (Folia)
+        private final ArrayDeque<UUID> queue = new ArrayDeque<>();
+        private final Set<UUID> queued = new HashSet<>();
+        private long spentNanos; // time spent in this job during the current tick
+        private boolean ran;
+
+        private Job(NametagMetrics.Timer timer, int period, Consumer<Player> work, NametagMetrics dispatchMetrics) {
+            this.timer = timer;
+            this.period = period;
+            this.stretchedPeriod = period;
+            this.work = work;
+            this.dispatchMetrics = dispatchMetrics;
+        }
+
+        private void stretch(double stretch) {
+            this.stretchedPeriod = (int) Math.max(1L, Math.min(Integer.MAX_VALUE, Math.round(period * stretch)));
+        }
+
+        private void enqueue(UUID player) {
+            // A player still queued from an earlier tick is not queued twice
+            if (queued.add(player)) {
+                queue.add(player);
+            }
+        }
+
+        private boolean runNext(PlatformScheduler platform, LongAdder totalNanos) {
+            UUID playerId = queue.poll();
+            if (playerId == null) return false;
+            queued.remove(playerId);
+            Player player = Bukkit.getPlayer(playerId);
+            if (player == null || !player.isOnline()) return true;
+            if (dispatchMetrics != null) {
+                // Region threads run the units in parallel, so each unit is timed on its own
+                platform.runForPlayer(player, () -> {
+                    long start = System.nanoTime();
+                    work.accept(player);
+                    long nanos = System.nanoTime() - start;
+                    dispatchMetrics.record(timer, nanos);
+                    totalNanos.add(nanos);
+                });
+                return true;
+            }
+            long start = System.nanoTime();
+            work.accept(player);
+            long nanos = System.nanoTime() - start;
+            spentNanos += nanos;
+            totalNanos.add(nanos);
+            ran = true;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.lyttledev.lyttlenametag.types;
+
+import net.kyori.adventure.text.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+// Bounded LRU of parsed lines by resolved text, so players with the same line text share one Component instance.
+public final class ComponentInterner {
+    private final Map<String, Component> components;
+
+    public ComponentInterner(int maxSize) {
+        this.components = new LinkedHashMap<>(64, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Component> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    // Thread-safe, lines are also completed on the async placeholder workers. Parsing happens outside the lock.
+    public Component intern(String text, Function<String, Component> parser) {
+        synchronized (components) {
+            Component component = components.get(text);
+            if (component != null) return component;
+        }
+        Component parsed = parser.apply(text);
+        synchronized (components) {
+            Component existing = components.putIfAbsent(text, parsed);
+            return existing != null ? existing : parsed;
+        }
+    }
+
+    public void clear() {
+        synchronized (components) {
+            components.clear();
+        }
+    }
+}
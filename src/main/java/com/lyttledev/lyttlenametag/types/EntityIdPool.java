@@ -0,0 +1,38 @@
+package com.lyttledev.lyttlenametag.types;
+
+import java.util.ArrayDeque;
+import java.util.UUID;
+
+// Line entity IDs handed out to nametags. IDs of players that left are reused first, so the counter only grows with
+// the peak number of lines online instead of with every join. An ID always maps to the same UUID.
+public final class EntityIdPool {
+    private static final long UUID_MOST_SIGNIFICANT_BITS = 0x4c7974746c654e54L; // "LyttleNT"
+
+    private final ArrayDeque<Integer> free = new ArrayDeque<>();
+    private int next; // next never used ID, counting down (away from the server's own entity IDs)
+
+    public EntityIdPool(int start) {
+        this.next = start;
+    }
+
+    public synchronized int[] acquire(int count) {
+        int[] ids = new int[count];
+        for (int i = 0; i < count; i++) {
+            Integer recycled = free.pollFirst();
+            ids[i] = recycled != null ? recycled : next--;
+        }
+        return ids;
+    }
+
+    // Only release IDs that were destroyed for every viewer, the next owner spawns them again
+    public synchronized void release(int[] ids) {
+        for (int id : ids) {
+            free.addFirst(id);
+        }
+    }
+
+    // Stable UUID of a line entity, the same for every spawn of the ID
+    public static UUID uuidOf(int id) {
+        return new UUID(UUID_MOST_SIGNIFICANT_BITS, id & 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,167 @@
+package com.lyttledev.lyttlenametag.types;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Runtime counters and timers of the nametag pipeline, shown by /lyttlenametag stats and dumped in Prometheus format.
+public final class NametagMetrics {
+    private static final int TIMER_SAMPLES = 1024;
+
+    private final Map<Counter, LongAdder> counters = new EnumMap<>(Counter.class);
+    // Replaced as a whole by every sample, /lyttlenametag stats and the Prometheus dump read it from other threads
+    private volatile Map<Counter, Double> ratesPerSecond;
+    private final Map<Counter, Long> lastSample = new EnumMap<>(Counter.class); // guarded by sampleRates
+    private final Map<Timer, TimerSamples> timers = new EnumMap<>(Timer.class);
+    private long lastSampleNanos = System.nanoTime();
+
+    public NametagMetrics() {
+        Map<Counter, Double> rates = new EnumMap<>(Counter.class);
+        for (Counter counter : Counter.values()) {
+            counters.put(counter, new LongAdder());
+            rates.put(counter, 0D);
+            lastSample.put(counter, 0L);
+        }
+        this.ratesPerSecond = Collections.unmodifiableMap(rates);
+        for (Timer timer : Timer.values()) {
+            timers.put(timer, new TimerSamples());
+        }
+    }
+
+    // Thread-safe, may be called from async placeholder workers
+    public void increment(Counter counter) {
+        counters.get(counter).increment();
+    }
+
+    public void add(Counter counter, long amount) {
+        counters.get(counter).add(amount);
+    }
+
+    public long get(Counter counter) {
+        return counters.get(counter).sum();
+    }
+
+    // Thread-safe, on Folia units are timed on the region threads
+    public void record(Timer timer, long nanos) {
+        timers.get(timer).record(nanos);
+    }
+
+    // Recompute the per-second rates from the counter deltas since the previous sample, and publish them as one snapshot
+    public synchronized void sampleRates() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-3, (now - lastSampleNanos) / 1_000_000_000D);
+        Map<Counter, Double> rates = new EnumMap<>(Counter.class);
+        for (Counter counter : Counter.values()) {
+            long value = get(counter);
+            rates.put(counter, (value - lastSample.get(counter)) / seconds);
+            lastSample.put(counter, value);
+        }
+        lastSampleNanos = now;
+        this.ratesPerSecond = Collections.unmodifiableMap(rates);
+    }
+
+    public double rate(Counter counter) {
+        return ratesPerSecond.get(counter);
+    }
+
+    // Rates of the last sample, unmodifiable
+    public Map<Counter, Double> rates() {
+        return ratesPerSecond;
+    }
+
+    // Percentile (0-1) of the recorded samples in milliseconds
+    public double percentileMillis(Timer timer, double percentile) {
+        return timers.get(timer).percentile(percentile) / 1_000_000D;
+    }
+
+    public String toPrometheus() {
+        StringBuilder out = new StringBuilder();
+        out.append("# TYPE lyttlenametag_events_total counter\n");
+        for (Counter counter : Counter.values()) {
+            out.append("lyttlenametag_events_total{event=\"").append(counter.key()).append("\"} ")
+                    .append(get(counter)).append('\n');
+        }
+        out.append("# TYPE lyttlenametag_events_per_second gauge\n");
+        Map<Counter, Double> rates = ratesPerSecond; // every rate from the same sample
+        for (Counter counter : Counter.values()) {
+            out.append("lyttlenametag_events_per_second{event=\"").append(counter.key()).append("\"} ")
+                    .append(format(rates.get(counter))).append('\n');
+        }
+        out.append("# TYPE lyttlenametag_timer_milliseconds summary\n");
+        for (Timer timer : Timer.values()) {
+            for (double quantile : new double[]{0.5D, 0.99D}) {
+                out.append("lyttlenametag_timer_milliseconds{timer=\"").append(timer.key())
+                        .append("\",quantile=\"").append(quantile).append("\"} ")
+                        .append(format(percentileMillis(timer, quantile))).append('\n');
+            }
+        }
+        return out.toString();
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.4f", value);
+    }
+
+    public enum Counter {
+        PACKETS_SPAWN("packets_spawn"),
+        PACKETS_METADATA("packets_metadata"),
+        PACKETS_PASSENGERS("packets_passengers"),
+        PACKETS_DESTROY("packets_destroy"),
+        PACKETS_BUNDLE("packets_bundle"),
+        METADATA_UPDATES("metadata_updates"),
+        SPAWNS("spawns"),
+        DESTROYS("destroys"),
+        PLACEHOLDERS_RESOLVED("placeholders_resolved"),
+        PLACEHOLDER_CACHE_HITS("placeholder_cache_hits");
+
+        private final String key;
+
+        Counter(String key) {
+            this.key = key;
+        }
+
+        public String key() {
+            return key;
+        }
+    }
+
+    public enum Timer {
+        UPDATE("update"),
+        VISIBILITY("visibility"),
+        SOFT_REFRESH("soft_refresh");
+
+        private final String key;
+
+        Timer(String key) {
+            this.key = key;
+        }
+
+        public String key() {
+            return key;
+        }
+    }
+
+    // Ring buffer of the most recent durations
+    private static final class TimerSamples {
+        private final long[] samples = new long[TIMER_SAMPLES];
+        private int count;
+        private int next;
+
+        private synchronized void record(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % samples.length;
+            count = Math.min(count + 1, samples.length);
+        }
+
+        private synchronized long percentile(double percentile) {
+            if (count == 0) return 0L;
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package com.lyttledev.lyttlenametag.types;
+
+import com.lyttledev.lyttleutils.types.YamlConfig;
+import org.bukkit.configuration.ConfigurationSection;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+// Typed, immutable snapshot of config.yml. Read once per (re)load and swapped as a whole,
+// so spawns and renders never read or cast the raw config and always see one consistent version.
+public record NametagSettings(
+        String nametag,
+        int intervalTicks,
+        int visibilityPeriod, // ticks between two visibility sweeps of a viewer
+        Map<String, Integer> refreshTiers, // placeholder prefix -> refresh period in ticks (0 = only on join/reload)
+        boolean asyncPlaceholders,
+        List<String> syncPlaceholders,
+        List<String> globalPlaceholders,
+        String relationKey,
+        double tickBudgetMillis,
+        int metricsDumpInterval,
+        int viewDistance, // blocks
+        double lineSpacing, // blocks
+        boolean singleEntity, // whole tag in one Text Display instead of one per line
+        int lineWidth, // pixels before the single entity wraps a line
+        boolean lodEnabled,
+        double lodNearDistance,
+        double lodMidDistance,
+        int lodMidPeriod,
+        int lodFarPeriod,
+        int viewerPacketBudget,
+        boolean adaptiveInterval,
+        double adaptiveMsptHigh, // milliseconds per tick
+        double adaptiveMsptLow,
+        double adaptiveTpsLow,
+        double adaptiveMaxStretch // most a refresh period is multiplied by under load
+) {
+    // Tested: the client's default Text Display view range (1.0) is 80 blocks for our metadata
+    private static final float BLOCKS_PER_VIEW_RANGE = 80.0f;
+
+    public static NametagSettings load(YamlConfig config, Logger logger) {
+        double near = number(config, "lod_near_distance", 16D);
+        int viewDistance = (int) number(config, "view_distance", 64D);
+        double msptHigh = number(config, "adaptive_mspt_high", 45D);
+        double tickBudget = number(config, "tick_budget_ms", 1.0D);
+        return new NametagSettings(
+                config.get("nametag") instanceof String nametag ? nametag : "",
+                Math.max(1, (int) Math.round(number(config, "interval", 0.5D) * 20)),
+                Math.max(1, (int) Math.round(number(config, "visibility_interval", 10D) * 20)),
+                readRefreshTiers(config, logger),
+                Boolean.TRUE.equals(config.get("async_placeholders")),
+                readPlaceholderPrefixes(config, "sync_placeholders"),
+                readPlaceholderPrefixes(config, "global_placeholders"),
+                config.get("relation_key") instanceof String relationKey ? relationKey : "",
+                tickBudget > 0 ? tickBudget : 1.0D, // A budget of 0 would starve the updates and pin the adaptive stretch
+                Math.max(0, (int) number(config, "metrics_dump_interval", 0D)),
+                viewDistance > 0 ? viewDistance : 64, // Default to 64 blocks if not set
+                number(config, "line_spacing", 0.275D), // Default ~0.275 blocks
+                Boolean.TRUE.equals(config.get("single_entity")),
+                Math.max(1, (int) number(config, "single_entity_line_width", 200D)), // Client default is 200
+                !Boolean.FALSE.equals(config.get("lod_enabled")),
+                near,
+                Math.max(near, number(config, "lod_mid_distance", 40D)),
+                (int) number(config, "lod_mid_period", 20D),
+                (int) number(config, "lod_far_period", 100D),
+                (int) number(config, "viewer_packet_budget", 0D),
+                !Boolean.FALSE.equals(config.get("adaptive_interval")),
+                msptHigh,
+                Math.min(msptHigh, number(config, "adaptive_mspt_low", 35D)),
+                number(config, "adaptive_tps_low", 19.5D),
+                Math.max(1D, number(config, "adaptive_max_stretch", 4D))
+        );
+    }
+
+    // View range metadata of the line entities for the configured view distance
+    public float viewRange() {
+        return viewDistance / BLOCKS_PER_VIEW_RANGE;
+    }
+
+    public double lodNearSquared() {
+        return lodNearDistance * lodNearDistance;
+    }
+
+    public double lodMidSquared() {
+        return lodMidDistance * lodMidDistance;
+    }
+
+    // Whether the line entities must be re-positioned or get another view range or width
+    public boolean layoutDiffers(NametagSettings other) {
+        return viewDistance != other.viewDistance || lineSpacing != other.lineSpacing || lineWidth != other.lineWidth;
+    }
+
+    private static double number(YamlConfig config, String key, double fallback) {
+        Object value = config.get(key);
+        return value instanceof Number number ? number.doubleValue() : fallback;
+    }
+
+    // Placeholder prefix -> refresh period in ticks ("join" or 0 = only on join/reload)
+    private static Map<String, Integer> readRefreshTiers(YamlConfig config, Logger logger) {
+        Map<String, Integer> tiers = new HashMap<>();
+        Object section = config.get("placeholder_refresh");
+        Map<String, Object> values;
+        if (section instanceof ConfigurationSection configurationSection) {
+            values = configurationSection.getValues(false);
+        } else if (section instanceof Map<?, ?> map) {
+            values = new HashMap<>();
+            map.forEach((key, value) -> values.put(String.valueOf(key), value));
+        } else {
+            return Collections.emptyMap();
+        }
+
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            String prefix = entry.getKey().replace("%", "");
+            Object value = entry.getValue();
+            if (value instanceof Number number) {
+                tiers.put(prefix, number.intValue());
+            } else if (value != null && value.toString().equalsIgnoreCase("join")) {
+                tiers.put(prefix, 0);
+            } else {
+                logger.warning("Invalid placeholder_refresh value for '" + entry.getKey() + "': " + value);
+            }
+        }
+        return Collections.unmodifiableMap(tiers);
+    }
+
+    // Placeholder prefixes without the % signs
+    private static List<String> readPlaceholderPrefixes(YamlConfig config, String key) {
+        List<String> prefixes = new ArrayList<>();
+        Object list = config.get(key);
+        if (list instanceof List<?> values) {
+            for (Object value : values) {
+                if (value != null) prefixes.add(value.toString().replace("%", ""));
+            }
+        }
+        return Collections.unmodifiableList(prefixes);
+    }
+}
@@ -0,0 +1,294 @@
+package com.lyttledev.lyttlenametag.types;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Pre-compiled nametag template: every line is split once into static text, built-in tokens and PAPI placeholders.
+public final class NametagTemplate {
+    // Built-in tokens (<PLAYER>, <X>, ...) and PlaceholderAPI placeholders (%identifier_params%)
+    private static final Pattern SEGMENT_PATTERN = Pattern.compile(
+            "<(PLAYER|DISPLAYNAME|WORLD|X|Y|Z)>|%([^%_\\s]+_[^%]+)%"
+    );
+    // 64-bit FNV-1a over the UTF-16 chars of a line's text
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final String source;
+    private final List<Line> linesBottomUp;
+    private final List<Segment> placeholders; // indexed by placeholder slot
+    private final Set<Token> usedTokens;
+
+    private NametagTemplate(String source, List<Line> linesBottomUp, List<Segment> placeholders) {
+        this.source = source;
+        this.linesBottomUp = linesBottomUp;
+        this.placeholders = placeholders;
+        EnumSet<Token> usedTokens = EnumSet.noneOf(Token.class);
+        for (Line line : linesBottomUp) {
+            for (Segment segment : line.getSegments()) {
+                if (segment.getType() == SegmentType.TOKEN) {
+                    usedTokens.add(segment.getToken());
+                }
+            }
+        }
+        // Placeholder arguments may embed built-in tokens as well
+        for (Segment placeholder : placeholders) {
+            for (Token token : Token.values()) {
+                if (placeholder.getText().contains(token.key())) {
+                    usedTokens.add(token);
+                }
+            }
+        }
+        this.usedTokens = Collections.unmodifiableSet(usedTokens);
+    }
+
+    public static NametagTemplate compile(String source) {
+        if (source == null) source = "";
+        // Split by newline, preserve trailing empty lines, then compile each line separately
+        String[] rawLines = source.split("\\R", -1);
+        List<Line> lines = new ArrayList<>(rawLines.length);
+        List<Segment> placeholders = new ArrayList<>();
+        // Compile bottom-up so line indexes match the entity order
+        for (int i = rawLines.length - 1; i >= 0; i--) {
+            lines.add(compileLine(rawLines[i], placeholders));
+        }
+        return new NametagTemplate(source, Collections.unmodifiableList(lines), Collections.unmodifiableList(placeholders));
+    }
+
+    private static Line compileLine(String rawLine, List<Segment> placeholders) {
+        List<Segment> segments = new ArrayList<>();
+        Matcher matcher = SEGMENT_PATTERN.matcher(rawLine);
+        int last = 0;
+        while (matcher.find()) {
+            if (matcher.start() > last) {
+                segments.add(Segment.text(rawLine.substring(last, matcher.start())));
+            }
+            if (matcher.group(1) != null) {
+                segments.add(Segment.token(Token.valueOf(matcher.group(1))));
+            } else {
+                Segment placeholder = Segment.placeholder(matcher.group(), placeholders.size());
+                placeholders.add(placeholder);
+                segments.add(placeholder);
+            }
+            last = matcher.end();
+        }
+        if (last < rawLine.length()) {
+            segments.add(Segment.text(rawLine.substring(last)));
+        }
+        return new Line(rawLine, Collections.unmodifiableList(segments));
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public int size() {
+        return linesBottomUp.size();
+    }
+
+    public Line getLine(int index) {
+        return linesBottomUp.get(index);
+    }
+
+    public List<Line> getLines() {
+        return linesBottomUp;
+    }
+
+    // Every placeholder occurrence in the template gets its own slot, so per-player values can live in flat arrays
+    public int getPlaceholderCount() {
+        return placeholders.size();
+    }
+
+    public Segment getPlaceholder(int slot) {
+        return placeholders.get(slot);
+    }
+
+    public Set<Token> getUsedTokens() {
+        return usedTokens;
+    }
+
+    public boolean hasRelationalLines() {
+        for (Line line : linesBottomUp) {
+            if (line.isRelational()) return true;
+        }
+        return false;
+    }
+
+    // Fingerprint of a resolved line, equal to Line.fingerprint for the same text
+    public static long fingerprint(String text) {
+        return fingerprint(FNV_OFFSET, text);
+    }
+
+    private static long fingerprint(long hash, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            hash ^= text.charAt(i);
+            hash *= FNV_PRIME;
+        }
+        return hash;
+    }
+
+    public enum Token {
+        PLAYER,
+        DISPLAYNAME,
+        WORLD,
+        X,
+        Y,
+        Z;
+
+        public String key() {
+            return "<" + name() + ">";
+        }
+    }
+
+    public enum SegmentType {
+        TEXT,
+        TOKEN,
+        PLACEHOLDER
+    }
+
+    // Supplies the dynamic values of a line while it is being resolved
+    public interface Resolver {
+        String token(Token token);
+
+        String placeholder(Segment placeholder);
+    }
+
+    public static final class Line {
+        private final String raw;
+        private final List<Segment> segments;
+        private final boolean dynamic;
+        private final boolean usesTokens;
+        private final boolean relational;
+
+        private Line(String raw, List<Segment> segments) {
+            this.raw = raw;
+            this.segments = segments;
+            boolean dynamic = false;
+            boolean usesTokens = false;
+            boolean relational = false;
+            for (Segment segment : segments) {
+                if (segment.getType() != SegmentType.TEXT) {
+                    dynamic = true;
+                }
+                if (segment.getType() == SegmentType.TOKEN) {
+                    usesTokens = true;
+                }
+                if (segment.isRelational()) {
+                    relational = true;
+                }
+            }
+            this.dynamic = dynamic;
+            this.usesTokens = usesTokens;
+            this.relational = relational;
+        }
+
+        public String getRaw() {
+            return raw;
+        }
+
+        public List<Segment> getSegments() {
+            return segments;
+        }
+
+        // Static lines contain only MiniMessage text and can be parsed once and shared
+        public boolean isDynamic() {
+            return dynamic;
+        }
+
+        public boolean usesTokens() {
+            return usesTokens;
+        }
+
+        // Relational lines depend on the viewer as well, they are rendered per viewer group
+        public boolean isRelational() {
+            return relational;
+        }
+
+        // Concatenate the static text with freshly resolved tokens and placeholders
+        public String resolve(Resolver resolver) {
+            if (!dynamic) return raw;
+            StringBuilder builder = new StringBuilder(raw.length() + 16);
+            for (Segment segment : segments) {
+                switch (segment.getType()) {
+                    case TEXT -> builder.append(segment.getText());
+                    case TOKEN -> builder.append(resolver.token(segment.getToken()));
+                    case PLACEHOLDER -> builder.append(resolver.placeholder(segment));
+                }
+            }
+            return builder.toString();
+        }
+
+        // Fingerprint of the resolved text without building it, so unchanged lines can be skipped cheaply
+        public long fingerprint(Resolver resolver) {
+            if (!dynamic) return NametagTemplate.fingerprint(raw);
+            long hash = FNV_OFFSET;
+            for (Segment segment : segments) {
+                hash = switch (segment.getType()) {
+                    case TEXT -> NametagTemplate.fingerprint(hash, segment.getText());
+                    // String.valueOf matches StringBuilder.append for missing values
+                    case TOKEN -> NametagTemplate.fingerprint(hash, String.valueOf(resolver.token(segment.getToken())));
+                    case PLACEHOLDER -> NametagTemplate.fingerprint(hash, String.valueOf(resolver.placeholder(segment)));
+                };
+            }
+            return hash;
+        }
+    }
+
+    public static final class Segment {
+        private final SegmentType type;
+        private final String text;
+        private final Token token;
+        private final int slot;
+
+        private Segment(SegmentType type, String text, Token token, int slot) {
+            this.type = type;
+            this.text = text;
+            this.token = token;
+            this.slot = slot;
+        }
+
+        static Segment text(String text) {
+            return new Segment(SegmentType.TEXT, text, null, -1);
+        }
+
+        static Segment token(Token token) {
+            return new Segment(SegmentType.TOKEN, token.key(), token, -1);
+        }
+
+        static Segment placeholder(String placeholder, int slot) {
+            return new Segment(SegmentType.PLACEHOLDER, placeholder, null, slot);
+        }
+
+        public SegmentType getType() {
+            return type;
+        }
+
+        // Literal text, token key or the full placeholder including its percent signs
+        public String getText() {
+            return text;
+        }
+
+        public Token getToken() {
+            return token;
+        }
+
+        // Placeholder slot within the template, -1 for text and tokens
+        public int getSlot() {
+            return slot;
+        }
+
+        // Placeholder identifier without the surrounding percent signs
+        public String getIdentifier() {
+            return type == SegmentType.PLACEHOLDER ? text.substring(1, text.length() - 1) : text;
+        }
+
+        // Relational PlaceholderAPI placeholder (%rel_...%), resolved with both the viewer and the owner
+        public boolean isRelational() {
+            return type == SegmentType.PLACEHOLDER && text.startsWith("%rel_");
+        }
+    }
+}
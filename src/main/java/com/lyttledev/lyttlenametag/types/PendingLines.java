@@ -0,0 +1,63 @@
+package com.lyttledev.lyttlenametag.types;
+
+import java.util.Arrays;
+
+// Per-viewer backlog of one nametag: lines (bit mask, bottom-up) that changed but were not sent to that viewer yet,
+// and the tick the viewer last received an update. Indexed by viewer slot, synchronized for Folia.
+// Lines held back by a band's period become due on their own (dueAt), lines outside the far band's mask only once
+// the viewer comes closer, the handler tracks those.
+public final class PendingLines {
+    private long[] pending = new long[0];
+    private long[] sentAt = new long[0];
+    private long dueAt = Long.MAX_VALUE; // earliest tick a backlog held back by its period may be sent
+
+    public synchronized void add(int viewer, long lines) {
+        ensureCapacity(viewer + 1);
+        pending[viewer] |= lines;
+    }
+
+    // Take the allowed part of the viewer's backlog if at least period ticks passed since its last update
+    public synchronized long take(int viewer, long allowed, int period, long tick) {
+        ensureCapacity(viewer + 1);
+        long lines = pending[viewer] & allowed;
+        if (lines == 0L) return 0L;
+        if (tick - sentAt[viewer] < period) {
+            dueAt = Math.min(dueAt, sentAt[viewer] + period);
+            return 0L;
+        }
+        pending[viewer] &= ~lines;
+        sentAt[viewer] = tick;
+        return lines;
+    }
+
+    // The viewer just received the whole tag (spawn), nothing is outstanding anymore
+    public synchronized void reset(int viewer, long tick) {
+        ensureCapacity(viewer + 1);
+        pending[viewer] = 0L;
+        sentAt[viewer] = tick;
+    }
+
+    // Start of a pass over every viewer, its takes record when the next period-held backlog is due
+    public synchronized void startPass() {
+        dueAt = Long.MAX_VALUE;
+    }
+
+    // Whether a backlog held back by its band's period may be sent by now
+    public synchronized boolean isDue(long tick) {
+        return tick >= dueAt;
+    }
+
+    public synchronized boolean hasPending(int viewer) {
+        return viewer < pending.length && pending[viewer] != 0L;
+    }
+
+    private void ensureCapacity(int slots) {
+        if (slots <= pending.length) return;
+        int size = Math.max(slots, pending.length * 2);
+        pending = Arrays.copyOf(pending, size);
+        long[] grown = Arrays.copyOf(sentAt, size);
+        // New viewers may receive their first update right away
+        Arrays.fill(grown, sentAt.length, size, Long.MIN_VALUE / 2);
+        sentAt = grown;
+    }
+}
@@ -0,0 +1,58 @@
+package com.lyttledev.lyttlenametag.types;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// Resolved placeholder values shared by all nametags: global values once for everyone, per-player values once per
+// player, each for its own time to live (in ticks). Bounded, the least recently used values are evicted first.
+public final class PlaceholderCache {
+    private final Map<Key, Entry> values;
+
+    public PlaceholderCache(int maxSize) {
+        this.values = new LinkedHashMap<>(256, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    // Cached value, or null if it is missing or expired. player is null for global placeholders.
+    public synchronized String get(UUID player, String placeholder, long tick) {
+        Key key = new Key(player, placeholder);
+        Entry entry = values.get(key);
+        if (entry == null) return null;
+        if (tick >= entry.expiresAt()) {
+            values.remove(key);
+            return null;
+        }
+        return entry.value();
+    }
+
+    public synchronized void put(UUID player, String placeholder, String value, long tick, long ttl) {
+        long expiresAt = ttl >= Long.MAX_VALUE - tick ? Long.MAX_VALUE : tick + ttl;
+        values.put(new Key(player, placeholder), new Entry(value, expiresAt));
+    }
+
+    // Drop every per-player value of the player, so "join" placeholders are resolved again on the next join
+    public synchronized void evict(UUID player) {
+        values.keySet().removeIf(key -> player.equals(key.player()));
+    }
+
+    public synchronized void clear() {
+        values.clear();
+    }
+
+    public enum Scope {
+        GLOBAL, // same value for every player (e.g. %server_online%)
+        PLAYER, // depends on the nametag owner
+        RELATIONAL // depends on the owner and the viewer, never cached here
+    }
+
+    private record Key(UUID player, String placeholder) {
+    }
+
+    private record Entry(String value, long expiresAt) {
+    }
+}
@@ -0,0 +1,65 @@
+package com.lyttledev.lyttlenametag.types;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+// Maps online players to dense integer slots, freed slots are recycled so indexes stay small. Synchronized for Folia.
+public final class PlayerSlots {
+    private final Map<UUID, Integer> slots = new HashMap<>();
+    private UUID[] players = new UUID[16];
+    private int[] freeSlots = new int[16];
+    private int freeCount;
+    private int highWater; // number of slots ever handed out
+
+    public synchronized int slotOf(UUID player) {
+        Integer slot = slots.get(player);
+        if (slot != null) return slot;
+
+        int assigned = freeCount > 0 ? freeSlots[--freeCount] : highWater++;
+        if (assigned >= players.length) {
+            UUID[] grown = new UUID[Math.max(players.length * 2, assigned + 1)];
+            System.arraycopy(players, 0, grown, 0, players.length);
+            players = grown;
+        }
+        players[assigned] = player;
+        slots.put(player, assigned);
+        return assigned;
+    }
+
+    // Slot of the player, or -1 if the player has none
+    public synchronized int find(UUID player) {
+        Integer slot = slots.get(player);
+        return slot != null ? slot : -1;
+    }
+
+    public synchronized UUID playerAt(int slot) {
+        return slot >= 0 && slot < highWater ? players[slot] : null;
+    }
+
+    // Release the player's slot, returns the freed slot or -1
+    public synchronized int release(UUID player) {
+        Integer slot = slots.remove(player);
+        if (slot == null) return -1;
+        players[slot] = null;
+        if (freeCount == freeSlots.length) {
+            int[] grown = new int[freeSlots.length * 2];
+            System.arraycopy(freeSlots, 0, grown, 0, freeSlots.length);
+            freeSlots = grown;
+        }
+        freeSlots[freeCount++] = slot;
+        return slot;
+    }
+
+    // Upper bound (exclusive) of all slots in use
+    public synchronized int capacity() {
+        return highWater;
+    }
+
+    public synchronized void clear() {
+        slots.clear();
+        players = new UUID[16];
+        freeCount = 0;
+        highWater = 0;
+    }
+}
@@ -0,0 +1,121 @@
+package com.lyttledev.lyttlenametag.types;
+
+// Viewer x owner bit matrix (one long[] row per viewer slot), set bit = owner's nametag is spawned for that viewer.
+// Synchronized, on Folia rows are enforced on the region thread of each viewer.
+public final class VisibilityMatrix {
+    private long[][] rows = new long[0][];
+    private int words; // longs per row
+
+    public synchronized boolean get(int viewer, int owner) {
+        if (viewer >= rows.length || rows[viewer] == null) return false;
+        int word = owner >>> 6;
+        return word < words && (rows[viewer][word] & (1L << owner)) != 0;
+    }
+
+    public synchronized void set(int viewer, int owner, boolean visible) {
+        ensureCapacity(Math.max(viewer, owner) + 1);
+        long[] row = rows[viewer];
+        if (row == null) {
+            row = new long[words];
+            rows[viewer] = row;
+        }
+        if (visible) {
+            row[owner >>> 6] |= 1L << owner;
+        } else {
+            row[owner >>> 6] &= ~(1L << owner);
+        }
+    }
+
+    // Live row of the viewer (may be null), sized to wordCount()
+    public synchronized long[] row(int viewer) {
+        return viewer < rows.length ? rows[viewer] : null;
+    }
+
+    // Owners set in the viewer's row
+    public synchronized int[] ownersOf(int viewer) {
+        long[] row = row(viewer);
+        if (row == null) return new int[0];
+        int count = 0;
+        for (long word : row) {
+            count += Long.bitCount(word);
+        }
+        int[] owners = new int[count];
+        int i = 0;
+        for (int word = 0; word < row.length; word++) {
+            long bits = row[word];
+            while (bits != 0) {
+                owners[i++] = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+            }
+        }
+        return owners;
+    }
+
+    public synchronized int wordCount() {
+        return words;
+    }
+
+    // Calls the listener for every owner whose desired bit differs from the viewer's last row (the row is not modified).
+    // The row is copied first, so the listener runs without holding the lock.
+    public void forEachChange(int viewer, long[] desired, ChangeListener listener) {
+        long[] last;
+        synchronized (this) {
+            long[] live = row(viewer);
+            last = live != null ? live.clone() : null;
+        }
+        for (int word = 0; word < desired.length; word++) {
+            long lastWord = last != null && word < last.length ? last[word] : 0L;
+            long changed = desired[word] ^ lastWord;
+            while (changed != 0) {
+                int owner = (word << 6) + Long.numberOfTrailingZeros(changed);
+                changed &= changed - 1;
+                listener.changed(owner, (desired[word] & (1L << owner)) != 0);
+            }
+        }
+    }
+
+    public synchronized void clearRow(int viewer) {
+        if (viewer < rows.length) {
+            rows[viewer] = null;
+        }
+    }
+
+    public synchronized void clearColumn(int owner) {
+        int word = owner >>> 6;
+        if (word >= words) return;
+        long mask = ~(1L << owner);
+        for (long[] row : rows) {
+            if (row != null) {
+                row[word] &= mask;
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        rows = new long[0][];
+        words = 0;
+    }
+
+    public synchronized void ensureCapacity(int slots) {
+        int neededWords = (slots + 63) >>> 6;
+        if (neededWords > words) {
+            for (int i = 0; i < rows.length; i++) {
+                if (rows[i] != null) {
+                    long[] grown = new long[neededWords];
+                    System.arraycopy(rows[i], 0, grown, 0, rows[i].length);
+                    rows[i] = grown;
+                }
+            }
+            words = neededWords;
+        }
+        if (slots > rows.length) {
+            long[][] grown = new long[Math.max(slots, rows.length * 2)][];
+            System.arraycopy(rows, 0, grown, 0, rows.length);
+            rows = grown;
+        }
+    }
+
+    public interface ChangeListener {
+        void changed(int owner, boolean visible);
+    }
+}